@@ -0,0 +1,62 @@
+#!/usr/bin/env bash
+#
+# Measures how long the service takes from launch to its first successful GET /widgets, and its
+# resident set size at that point, for the plain Spring Boot jar and for the fast-startup build
+# with and without its class-data sharing archive. Prints the median of each over the given
+# number of runs (5 by default).
+#
+# Needs Linux (for /proc), curl and JDK 13 or later. Run it from anywhere:
+#
+#     scripts/measure-startup.sh 10
+
+set -euo pipefail
+
+runs=${1:-5}
+cd "$(dirname "$0")/.."
+jar=widget-service-0.1.0
+work=$(mktemp -d)
+trap 'rm -rf "$work"' EXIT
+
+echo "Building the plain and the fast-startup jars..."
+mvn -B -q clean package -DskipTests > "$work/build.log"
+cp "target/$jar.jar" "$work/plain.jar"
+mvn -B -q -P fast-startup clean package -DskipTests > "$work/build.log"
+
+median() {
+    sort -n | awk '{ values[NR] = $1 } END { print values[int((NR + 1) / 2)] }'
+}
+
+measure() {
+    local name=$1
+    shift
+    : > "$work/millis"
+    : > "$work/rss"
+    for ((run = 1; run <= runs; run++)); do
+        local port=$((20000 + RANDOM % 20000))
+        local start=$(date +%s%N)
+        "$@" --server.port=$port > "$work/service.log" 2>&1 &
+        local pid=$!
+        until curl -sf -o /dev/null "http://localhost:$port/widgets"; do
+            if ! kill -0 $pid 2> /dev/null; then
+                cat "$work/service.log"
+                echo "$name exited before it served a request" >&2
+                exit 1
+            fi
+            sleep 0.02
+        done
+        echo $(( ($(date +%s%N) - start) / 1000000 )) >> "$work/millis"
+        awk '/^VmRSS/ { print int($2 / 1024) }' /proc/$pid/status >> "$work/rss"
+        kill $pid
+        wait $pid 2> /dev/null || true
+    done
+    printf '%-28s %10s ms %8s MB\n' "$name" "$(median < "$work/millis")" "$(median < "$work/rss")"
+}
+
+printf '%-28s %13s %11s\n' "variant" "first request" "RSS"
+measure "plain jar" \
+    java -jar "$work/plain.jar"
+measure "fast-startup without CDS" \
+    java -jar "target/$jar-fast-startup.jar" --spring.profiles.active=fast-startup
+measure "fast-startup" \
+    java -XX:SharedArchiveFile="target/$jar.jsa" -jar "target/$jar-fast-startup.jar" \
+    --spring.profiles.active=fast-startup
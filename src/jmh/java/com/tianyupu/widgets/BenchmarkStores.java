@@ -0,0 +1,80 @@
+package com.tianyupu.widgets;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+final class BenchmarkStores {
+    static final int BOARD_SIZE = 100_000;
+    static final int WIDGET_SIZE = 50;
+    private static final int SEGMENT_SIZE = 256 << 20;
+    private static final int POPULATE_BATCH = 10_000;
+
+    private BenchmarkStores() {
+    }
+
+    static WidgetService create(String implementation, Path directory) {
+        switch (implementation) {
+            case "memory":
+                return new DefaultWidgetService();
+            case "columnar":
+                return new ColumnarWidgetService();
+            case "durable":
+                return new DurableWidgetService(directory, SEGMENT_SIZE, Long.MAX_VALUE);
+            default:
+                throw new IllegalArgumentException("Unknown widget service implementation " + implementation);
+        }
+    }
+
+    /**
+     * Creates {@code widgetCount} widgets at z-indexes 0 to {@code widgetCount - 1}, in id order, so
+     * that an insert at z-index {@code z} shifts every widget from {@code z} up.
+     */
+    static void populate(WidgetService widgetService, int widgetCount, long seed) {
+        Random random = new Random(seed);
+        List<WidgetBatchOperation> operations = new ArrayList<>(POPULATE_BATCH);
+        for (int i = 0; i < widgetCount; i++) {
+            WidgetBatchOperation operation = new WidgetBatchOperation();
+            operation.setType(WidgetBatchOperation.Type.CREATE);
+            operation.setWidget(randomRequest(random, i));
+            operations.add(operation);
+            if (operations.size() == POPULATE_BATCH || i == widgetCount - 1) {
+                widgetService.applyBatch(operations);
+                operations.clear();
+            }
+        }
+    }
+
+    static WidgetRequest randomRequest(Random random, Integer zIndex) {
+        WidgetRequest widgetRequest = new WidgetRequest();
+        widgetRequest.setX(random.nextInt(BOARD_SIZE));
+        widgetRequest.setY(random.nextInt(BOARD_SIZE));
+        widgetRequest.setWidth(WIDGET_SIZE);
+        widgetRequest.setHeight(WIDGET_SIZE);
+        widgetRequest.setZIndex(zIndex);
+        return widgetRequest;
+    }
+
+    static Path temporaryDirectory() {
+        try {
+            return Files.createTempDirectory("widgets-benchmark");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static void close(WidgetService widgetService, Path directory) throws IOException {
+        if (widgetService instanceof Closeable) {
+            ((Closeable) widgetService).close();
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
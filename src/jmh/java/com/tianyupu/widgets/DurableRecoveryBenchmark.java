@@ -0,0 +1,61 @@
+package com.tianyupu.widgets;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long the durable store takes to start up from the log alone and from a snapshot.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DurableRecoveryBenchmark {
+    @Param({"100000", "1000000"})
+    public int widgetCount;
+
+    @Param({"false", "true"})
+    public boolean snapshot;
+
+    private Path directory;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        directory = BenchmarkStores.temporaryDirectory();
+        try (DurableWidgetService widgetService = (DurableWidgetService) BenchmarkStores.create("durable", directory)) {
+            BenchmarkStores.populate(widgetService, widgetCount, 11);
+            if (snapshot) {
+                widgetService.snapshot();
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkStores.close(new DefaultWidgetService(), directory);
+    }
+
+    @Benchmark
+    public int recover() {
+        try (DurableWidgetService widgetService = (DurableWidgetService) BenchmarkStores.create("durable", directory)) {
+            return widgetService.getAllWidgets().size();
+        }
+    }
+}
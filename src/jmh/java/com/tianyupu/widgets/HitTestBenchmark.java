@@ -0,0 +1,65 @@
+package com.tianyupu.widgets;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures looking up the topmost widget and the whole stack at a random point. The board has a
+ * background widget covering all of it below the regular widgets, so every lookup also visits the
+ * grid level that holds large widgets.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HitTestBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    public int widgetCount;
+
+    @Param({"memory", "columnar"})
+    public String implementation;
+
+    private WidgetService widgetService;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        widgetService = BenchmarkStores.create(implementation, null);
+        WidgetRequest background = new WidgetRequest();
+        background.setX(0);
+        background.setY(0);
+        background.setWidth(BenchmarkStores.BOARD_SIZE);
+        background.setHeight(BenchmarkStores.BOARD_SIZE);
+        widgetService.createWidget(background);
+        BenchmarkStores.populate(widgetService, widgetCount, 11);
+    }
+
+    @Benchmark
+    public List<Widget> getTopmostWidgetAt() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return widgetService.getWidgetsAt(random.nextInt(BenchmarkStores.BOARD_SIZE),
+                random.nextInt(BenchmarkStores.BOARD_SIZE), 1);
+    }
+
+    @Benchmark
+    public List<Widget> getWidgetStackAt() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return widgetService.getWidgetsAt(random.nextInt(BenchmarkStores.BOARD_SIZE),
+                random.nextInt(BenchmarkStores.BOARD_SIZE), Integer.MAX_VALUE);
+    }
+}
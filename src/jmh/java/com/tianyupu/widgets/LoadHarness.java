@@ -0,0 +1,299 @@
+package com.tianyupu.widgets;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.context.ConfigurableApplicationContext;
+import reactor.core.publisher.Mono;
+import reactor.netty.ByteBufFlux;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Drives the HTTP API with an open-loop workload and prints the latency percentiles and
+ * throughput of each request type.
+ *
+ * Requests are sent at a fixed rate whether or not earlier ones have completed, and each latency
+ * is measured from the moment the request was due rather than from when it was sent, so a stalled
+ * service shows up in the percentiles instead of slowing the load down. Unless {@code --target}
+ * names a running service, the harness starts one in-process with the given store and serving
+ * mode. Either way it first loads {@code --widgets} widgets onto the default board.
+ *
+ * Run with {@code mvn -P benchmarks compile exec:java -Dexec.args="--workload=reads --rate=2000"}
+ * or {@code java -cp target/benchmarks.jar com.tianyupu.widgets.LoadHarness --workload=reads}.
+ */
+public final class LoadHarness {
+    private static final int POPULATE_BATCH = WidgetController.MAX_BATCH_SIZE;
+    private static final int LOW_Z_INDEXES = 10;
+
+    private final Map<String, String> options;
+    private final Workload workload;
+    private final int rate;
+    private final int widgetCount;
+    private final int batchSize;
+    private final Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder missed = new LongAdder();
+    private HttpClient client;
+
+    private LoadHarness(Map<String, String> options) {
+        this.options = options;
+        this.workload = Workload.valueOf(option("workload", "reads").toUpperCase());
+        this.rate = Integer.parseInt(option("rate", "1000"));
+        this.widgetCount = Integer.parseInt(option("widgets", "10000"));
+        this.batchSize = Integer.parseInt(option("batch-size", "100"));
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new ConcurrentHistogram(3));
+            errors.put(operation, new LongAdder());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        new LoadHarness(options).run();
+        System.exit(0);
+    }
+
+    private void run() throws IOException, InterruptedException {
+        String target = options.get("target");
+        Path directory = null;
+        ConfigurableApplicationContext context = null;
+        if (target == null) {
+            String store = option("store", "memory");
+            SpringApplicationBuilder application = new SpringApplicationBuilder(Application.class)
+                    .properties(
+                            "server.port=0",
+                            "widgets.store=" + store,
+                            "spring.main.web-application-type=" + option("mode", "servlet"),
+                            "spring.main.banner-mode=off",
+                            "logging.level.root=WARN");
+            if (store.equals("durable")) {
+                directory = BenchmarkStores.temporaryDirectory();
+                application.properties("widgets.durable.directory=" + directory);
+            }
+            context = application.run();
+            target = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+        } else {
+            LoggingSystem logging = LoggingSystem.get(LoadHarness.class.getClassLoader());
+            logging.beforeInitialize();
+            logging.setLogLevel(LoggingSystem.ROOT_LOGGER_NAME, LogLevel.WARN);
+        }
+
+        int connections = Integer.parseInt(option("connections", "64"));
+        client = HttpClient.create(ConnectionProvider.fixed("load-harness", connections, Long.MAX_VALUE))
+                .baseUrl(target)
+                .headers(headers -> headers.set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON));
+        try {
+            populate();
+            long warmup = TimeUnit.SECONDS.toNanos(Long.parseLong(option("warmup", "10")));
+            long duration = TimeUnit.SECONDS.toNanos(Long.parseLong(option("duration", "30")));
+            System.out.printf("%s at %d requests/s against %s with %d widgets and %d connections%n",
+                    workload.name().toLowerCase(), rate, target, widgetCount, connections);
+            drive(warmup, duration);
+            report(duration);
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+            if (directory != null) {
+                BenchmarkStores.close(null, directory);
+            }
+        }
+    }
+
+    /**
+     * Loads the widgets at z-indexes 0 to {@code widgetCount - 1}, so that inserts and moves onto
+     * low z-indexes shift the loaded widgets above them.
+     */
+    private void populate() {
+        Random random = new Random(11);
+        for (int created = 0; created < widgetCount; created += POPULATE_BATCH) {
+            int first = created;
+            String batch = batch(random, Math.min(POPULATE_BATCH, widgetCount - created), i -> first + i);
+            int status = send(Operation.INSERT_BATCH, "/widgets/batch", batch).block();
+            if (status != 200) {
+                throw new IllegalStateException("Loading widgets failed with status " + status);
+            }
+        }
+    }
+
+    /**
+     * Sends one request every {@code 1 / rate} seconds, recording only the requests that are due
+     * after the warm-up. Waits up to a minute for the last responses before returning.
+     */
+    private void drive(long warmup, long duration) throws InterruptedException {
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long measureFrom = start + warmup;
+        long end = measureFrom + duration;
+        for (long due = start; due < end; due += interval) {
+            for (long now = System.nanoTime(); now < due; now = System.nanoTime()) {
+                LockSupport.parkNanos(due - now);
+            }
+            long scheduled = due;
+            Operation operation = workload.next(ThreadLocalRandom.current());
+            inFlight.incrementAndGet();
+            request(operation, ThreadLocalRandom.current()).subscribe(
+                    status -> completed(operation, scheduled, measureFrom, status),
+                    error -> completed(operation, scheduled, measureFrom, -1));
+        }
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        missed.add(inFlight.get());
+    }
+
+    private void completed(Operation operation, long scheduled, long measureFrom, int status) {
+        long latency = System.nanoTime() - scheduled;
+        inFlight.decrementAndGet();
+        if (scheduled < measureFrom) {
+            return;
+        }
+        if (status < 200 || status >= 300) {
+            errors.get(operation).increment();
+        } else {
+            latencies.get(operation).recordValue(TimeUnit.NANOSECONDS.toMicros(latency));
+        }
+    }
+
+    private void report(long duration) {
+        double seconds = duration / 1e9;
+        System.out.printf("%-14s %10s %10s %10s %10s %10s %10s %8s%n",
+                "operation", "requests/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "requests", "errors");
+        for (Operation operation : Operation.values()) {
+            Histogram histogram = latencies.get(operation);
+            long count = histogram.getTotalCount();
+            long failed = errors.get(operation).sum();
+            if (count + failed == 0) {
+                continue;
+            }
+            System.out.printf("%-14s %10.1f %10.2f %10.2f %10.2f %10.2f %10d %8d%n",
+                    operation.name().toLowerCase(), count / seconds,
+                    millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(99)),
+                    millis(histogram.getValueAtPercentile(99.9)), millis(histogram.getMaxValue()), count, failed);
+        }
+        if (missed.sum() > 0) {
+            System.out.printf("%d requests were still outstanding at the end%n", missed.sum());
+        }
+    }
+
+    private Mono<Integer> request(Operation operation, Random random) {
+        long id = 1 + random.nextInt(widgetCount);
+        switch (operation) {
+            case GET_WIDGET:
+                return send(operation, "/widget/" + id, null);
+            case GET_ALL:
+                return send(operation, "/widgets", null);
+            case INSERT_BATCH:
+                return send(operation, "/widgets/batch", batch(random, batchSize, i -> random.nextInt(LOW_Z_INDEXES)));
+            default:
+                return send(operation, "/widget/" + id, widget(random, random.nextInt(widgetCount)));
+        }
+    }
+
+    private Mono<Integer> send(Operation operation, String path, String body) {
+        HttpClient.ResponseReceiver<?> request;
+        switch (operation) {
+            case INSERT_BATCH:
+                request = client.post().uri(path).send(ByteBufFlux.fromString(Mono.just(body)));
+                break;
+            case UPDATE:
+                request = client.put().uri(path).send(ByteBufFlux.fromString(Mono.just(body)));
+                break;
+            default:
+                request = client.get().uri(path);
+                break;
+        }
+        return request.responseSingle((response, content) -> content.asByteArray()
+                .map(bytes -> response.status().code())
+                .defaultIfEmpty(response.status().code()))
+                .timeout(Duration.ofMinutes(1));
+    }
+
+    private static String batch(Random random, int size, IntUnaryOperator zIndexes) {
+        StringBuilder batch = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                batch.append(',');
+            }
+            batch.append("{\"type\":\"CREATE\",\"widget\":")
+                    .append(widget(random, zIndexes.applyAsInt(i)))
+                    .append('}');
+        }
+        return batch.append(']').toString();
+    }
+
+    private static String widget(Random random, int zIndex) {
+        return "{\"x\":" + random.nextInt(BenchmarkStores.BOARD_SIZE)
+                + ",\"y\":" + random.nextInt(BenchmarkStores.BOARD_SIZE)
+                + ",\"width\":" + BenchmarkStores.WIDGET_SIZE
+                + ",\"height\":" + BenchmarkStores.WIDGET_SIZE
+                + ",\"zindex\":" + zIndex + "}";
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+    private String option(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    private enum Operation {
+        GET_WIDGET, GET_ALL, INSERT_BATCH, UPDATE
+    }
+
+    /**
+     * The request mixes to choose from: polling reads of single widgets and the full list, batches
+     * of inserts at the bottom of the z-order, which shift almost every widget, and updates that
+     * move widgets onto random z-indexes.
+     */
+    private enum Workload {
+        READS {
+            @Override
+            Operation next(Random random) {
+                return random.nextInt(10) == 0 ? Operation.GET_ALL : Operation.GET_WIDGET;
+            }
+        },
+        INSERTS {
+            @Override
+            Operation next(Random random) {
+                return Operation.INSERT_BATCH;
+            }
+        },
+        UPDATES {
+            @Override
+            Operation next(Random random) {
+                return Operation.UPDATE;
+            }
+        };
+
+        abstract Operation next(Random random);
+    }
+}
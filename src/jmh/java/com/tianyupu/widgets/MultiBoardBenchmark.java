@@ -0,0 +1,101 @@
+package com.tianyupu.widgets;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures write throughput when the benchmark threads spread their writes over one or more
+ * boards. Each thread writes to board {@code thread % boardCount}, so with one board every write
+ * waits for the same lock and shifts the same z-order, while with at least as many boards as
+ * threads the writers never meet.
+ *
+ * Run with {@code java -jar target/benchmarks.jar MultiBoardBenchmark -t <threads>} and compare
+ * {@code boardCount=1} with {@code boardCount} at or above the thread count.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MultiBoardBenchmark {
+    @Param({"1", "4", "16"})
+    public int boardCount;
+
+    @Param({"10000"})
+    public int widgetsPerBoard;
+
+    @Param({"memory", "columnar"})
+    public String implementation;
+
+    private final AtomicInteger threads = new AtomicInteger();
+    private WidgetBoards boards;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        boards = new WidgetBoards(board -> BenchmarkStores.create(implementation, null), Collections.emptyList(),
+                boardCount + 1);
+        for (int i = 0; i < boardCount; i++) {
+            BenchmarkStores.populate(boards.board(boardName(i)), widgetsPerBoard, i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        boards.close();
+    }
+
+    @Benchmark
+    public Widget createAndDeleteInTheMiddle(Writer writer) {
+        Widget widget = writer.board.createWidget(
+                BenchmarkStores.randomRequest(ThreadLocalRandom.current(), writer.middleZIndex));
+        return writer.board.deleteWidgetById(widget.getId());
+    }
+
+    @Benchmark
+    public Widget updateWidget(Writer writer) {
+        Random random = ThreadLocalRandom.current();
+        long id = 1 + random.nextInt(widgetsPerBoard);
+        Widget widget = writer.board.getWidgetById(id);
+        if (widget == null) {
+            return null;
+        }
+        return writer.board.updateWidgetById(id, BenchmarkStores.randomRequest(random, widget.getZIndex()));
+    }
+
+    private static String boardName(int index) {
+        return "board-" + index;
+    }
+
+    @State(Scope.Thread)
+    public static class Writer {
+        private WidgetService board;
+        private int middleZIndex;
+
+        @Setup(Level.Trial)
+        public void setup(MultiBoardBenchmark benchmark) {
+            board = benchmark.boards.board(boardName(benchmark.threads.getAndIncrement() % benchmark.boardCount));
+            List<Widget> widgets = board.getAllWidgets();
+            middleZIndex = widgets.get(widgets.size() / 2).getZIndex();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.tianyupu.widgets;
+
+import com.sun.management.OperatingSystemMXBean;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.tianyupu.widgets.WidgetBoards.DEFAULT_BOARD;
+
+/**
+ * Measures full listings written the way {@code GET /widgets} writes them while a background
+ * writer updates one widget every {@code writeIntervalMillis}, so that readers keep missing the
+ * cache together. {@code cached} reads go through the response cache, whose concurrent misses
+ * share one load and encoding; {@code uncached} reads load and encode the list on every call.
+ * After each iteration the benchmark prints the process CPU time per read and how many reads
+ * shared a load.
+ *
+ * Run with {@code java -jar target/benchmarks.jar ReadBurstBenchmark -t <threads>} for several
+ * thread counts; with {@code cached}, the CPU time per read falls as the thread count rises.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReadBurstBenchmark {
+    private static final OutputStream DISCARD = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    @Param({"10000"})
+    public int widgetCount;
+
+    @Param({"1"})
+    public int writeIntervalMillis;
+
+    @Param({"cached", "uncached"})
+    public String reads;
+
+    private final LongAdder readCount = new LongAdder();
+    private final OperatingSystemMXBean operatingSystem =
+            (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+    private WidgetService widgetService;
+    private WidgetResponseCache responseCache;
+    private ScheduledExecutorService writer;
+    private long cpuTime;
+    private long coalescedLoads;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        WidgetBoards boards = new WidgetBoards(board -> new DefaultWidgetService(), Collections.emptyList(), 1);
+        widgetService = boards.board(DEFAULT_BOARD);
+        BenchmarkStores.populate(widgetService, widgetCount, 42);
+        responseCache = new WidgetResponseCache(boards, 1L << 30);
+        Random random = new Random(42);
+        writer = Executors.newSingleThreadScheduledExecutor();
+        writer.scheduleAtFixedRate(() -> {
+            long id = 1 + random.nextInt(widgetCount);
+            Widget widget = widgetService.getWidgetById(id);
+            widgetService.updateWidgetById(id, BenchmarkStores.randomRequest(random, widget.getZIndex()));
+        }, writeIntervalMillis, writeIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        writer.shutdownNow();
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        readCount.reset();
+        cpuTime = operatingSystem.getProcessCpuTime();
+        coalescedLoads = responseCache.coalescedLoads();
+    }
+
+    @TearDown(Level.Iteration)
+    public void endIteration() {
+        long reads = readCount.sum();
+        System.out.printf("%n%s: %.1f us of CPU per read over %d reads, %d of them sharing a load%n",
+                this.reads, (operatingSystem.getProcessCpuTime() - cpuTime) / 1000.0 / Math.max(reads, 1), reads,
+                responseCache.coalescedLoads() - coalescedLoads);
+    }
+
+    @Benchmark
+    public void readAllWidgets() throws IOException {
+        if (reads.equals("cached")) {
+            List<Widget> widgets = responseCache.widgets(DEFAULT_BOARD);
+            byte[] encoded = responseCache.encoded(widgets);
+            if (encoded != null) {
+                DISCARD.write(encoded, 0, encoded.length);
+            } else {
+                WidgetJsonWriter.forCurrentThread().writeList(widgets, DISCARD);
+            }
+        } else {
+            WidgetJsonWriter.forCurrentThread().writeList(widgetService.getAllWidgets(), DISCARD);
+        }
+        readCount.increment();
+    }
+}
@@ -0,0 +1,61 @@
+package com.tianyupu.widgets;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.tianyupu.widgets.WidgetBoards.DEFAULT_BOARD;
+
+/**
+ * Measures inserts into the middle of a board whose widgets are all in the response cache,
+ * followed by a cached read of a widget below the insert. Every insert shifts the upper half of
+ * the board, so this shows what a shift costs the cache.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResponseCacheBenchmark {
+    @Param({"10000", "100000"})
+    public int widgetCount;
+
+    private WidgetService widgetService;
+    private WidgetResponseCache responseCache;
+    private int middleZIndex;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        WidgetBoards boards = new WidgetBoards(board -> new DefaultWidgetService(), Collections.emptyList(), 1);
+        widgetService = boards.board(DEFAULT_BOARD);
+        BenchmarkStores.populate(widgetService, widgetCount, 42);
+        responseCache = new WidgetResponseCache(boards, 1L << 30);
+        for (long id = 1; id <= widgetCount; id++) {
+            responseCache.widget(DEFAULT_BOARD, id);
+        }
+        middleZIndex = widgetService.getWidgetById(widgetCount / 2 + 1).getZIndex();
+    }
+
+    @Benchmark
+    public Widget insertInTheMiddleAndReadBelow() {
+        Random random = ThreadLocalRandom.current();
+        Widget inserted = widgetService.createWidget(BenchmarkStores.randomRequest(random, middleZIndex));
+        widgetService.deleteWidgetById(inserted.getId());
+        return responseCache.widget(DEFAULT_BOARD, 1 + random.nextInt(widgetCount / 2));
+    }
+}
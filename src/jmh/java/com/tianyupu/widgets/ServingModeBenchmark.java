@@ -0,0 +1,106 @@
+package com.tianyupu.widgets;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives the HTTP API over real connections in the servlet and reactive serving modes. Each JMH
+ * thread is one keep-alive client, so running with more threads than the servlet container's
+ * worker pool (200 by default) shows how each mode behaves once connections outnumber threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ServingModeBenchmark {
+    @Param({"servlet", "reactive"})
+    public String mode;
+
+    @Param({"1000", "10000"})
+    public int widgetCount;
+
+    private ConfigurableApplicationContext context;
+    private URL allWidgets;
+    private URL widgetPage;
+    private URL singleWidget;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        context = new SpringApplicationBuilder(Application.class)
+                .properties(
+                        "server.port=0",
+                        "spring.main.web-application-type=" + mode,
+                        "spring.main.banner-mode=off",
+                        "logging.level.root=WARN")
+                .run();
+        BenchmarkStores.populate(
+                context.getBean(WidgetBoards.class).board(WidgetBoards.DEFAULT_BOARD), widgetCount, 11);
+
+        String base = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+        allWidgets = new URL(base + "/widgets");
+        widgetPage = new URL(base + "/widgets?limit=100");
+        singleWidget = new URL(base + "/widget/" + (widgetCount / 2));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public long getWidget() throws IOException {
+        return get(singleWidget, "application/json");
+    }
+
+    @Benchmark
+    public long getWidgetPage() throws IOException {
+        return get(widgetPage, "application/json");
+    }
+
+    @Benchmark
+    public long getAllWidgets() throws IOException {
+        return get(allWidgets, "application/json");
+    }
+
+    @Benchmark
+    public long streamAllWidgets() throws IOException {
+        return get(allWidgets, "application/x-ndjson, application/json");
+    }
+
+    private static long get(URL url, String accept) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestProperty("Accept", accept);
+        byte[] buffer = new byte[8192];
+        long read = 0;
+        try (InputStream body = connection.getInputStream()) {
+            for (int n = body.read(buffer); n >= 0; n = body.read(buffer)) {
+                read += n;
+            }
+        }
+        if (connection.getResponseCode() != 200) {
+            throw new IllegalStateException("Unexpected status " + connection.getResponseCode() + " from " + url);
+        }
+        return read;
+    }
+}
@@ -0,0 +1,52 @@
+package com.tianyupu.widgets;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures area queries for a fixed board density. With widgets spread uniformly, the number of
+ * widgets found grows with {@code area} squared and with {@code widgetCount}, so comparing rows shows
+ * whether latency follows the result size or the board size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SpatialIndexBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    public int widgetCount;
+
+    @Param({"500", "2000", "8000"})
+    public int area;
+
+    private WidgetService widgetService;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        widgetService = new DefaultWidgetService();
+        BenchmarkStores.populate(widgetService, widgetCount, 7);
+    }
+
+    @Benchmark
+    public List<Widget> getWidgetsInArea() {
+        int x = ThreadLocalRandom.current().nextInt(BenchmarkStores.BOARD_SIZE - area);
+        int y = ThreadLocalRandom.current().nextInt(BenchmarkStores.BOARD_SIZE - area);
+        return widgetService.getWidgetsInArea(x, y, x + area, y + area);
+    }
+}
@@ -0,0 +1,98 @@
+package com.tianyupu.widgets;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the heap footprint and garbage collection cost of the in-memory stores on a large board.
+ *
+ * Setup prints the retained heap per widget and the length of a full collection with the board
+ * live. The benchmark then churns the board with updates and reads, and tear-down prints how many
+ * collections ran during the trial and how long they took in total. Add {@code -prof gc} for
+ * allocation rates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+@State(Scope.Benchmark)
+public class StoreFootprintBenchmark {
+    @Param({"1000000"})
+    public int widgetCount;
+
+    @Param({"memory", "columnar"})
+    public String implementation;
+
+    private WidgetService widgetService;
+    private long collections;
+    private long collectionMillis;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        long before = usedHeapAfterCollection();
+        widgetService = BenchmarkStores.create(implementation, null);
+        BenchmarkStores.populate(widgetService, widgetCount, 42);
+        long after = usedHeapAfterCollection();
+
+        long start = System.nanoTime();
+        System.gc();
+        long fullCollectionMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        System.out.printf("%n%s: %d bytes per widget, full collection took %d ms%n",
+                implementation, (after - before) / widgetCount, fullCollectionMillis);
+        collections = totalCollections();
+        collectionMillis = totalCollectionMillis();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.printf("%n%s: %d collections taking %d ms during the trial%n",
+                implementation, totalCollections() - collections, totalCollectionMillis() - collectionMillis);
+    }
+
+    @Benchmark
+    public Widget churn() {
+        Random random = ThreadLocalRandom.current();
+        long id = 1 + random.nextInt(widgetCount);
+        Widget widget = widgetService.getWidgetById(id);
+        return widgetService.updateWidgetById(id, BenchmarkStores.randomRequest(random, widget.getZIndex()));
+    }
+
+    private static long usedHeapAfterCollection() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long totalCollections() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionCount)
+                .sum();
+    }
+
+    private static long totalCollectionMillis() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionTime)
+                .sum();
+    }
+}
@@ -0,0 +1,75 @@
+package com.tianyupu.widgets;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes the full widget list the way {@code GET /widgets} does for each response format. The size
+ * of one encoded list is printed once per trial.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WidgetSerializationBenchmark {
+    @Param({"100", "10000"})
+    public int widgetCount;
+
+    @Param({"jackson", "writer", "smile", "cbor"})
+    public String format;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 20);
+    private List<Widget> widgets;
+    private ObjectMapper objectMapper;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        WidgetService widgetService = new DefaultWidgetService();
+        BenchmarkStores.populate(widgetService, widgetCount, 7);
+        widgets = widgetService.getAllWidgets();
+        switch (format) {
+            case "smile":
+                objectMapper = Jackson2ObjectMapperBuilder.smile().build();
+                break;
+            case "cbor":
+                objectMapper = Jackson2ObjectMapperBuilder.cbor().build();
+                break;
+            default:
+                objectMapper = Jackson2ObjectMapperBuilder.json()
+                        .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                        .build();
+        }
+        System.out.println(format + ": " + encode().size() + " bytes for " + widgetCount + " widgets");
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream encode() throws IOException {
+        out.reset();
+        if (format.equals("writer")) {
+            WidgetJsonWriter.forCurrentThread().writeList(widgets, out);
+        } else {
+            objectMapper.writeValue(out, widgets);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,131 @@
+package com.tianyupu.widgets;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the WidgetService hot paths as the store grows.
+ *
+ * Run with {@code java -jar target/benchmarks.jar WidgetServiceBenchmark -t <threads>} and narrow
+ * the parameters with {@code -p widgetCount=100000 -p implementation=memory}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WidgetServiceBenchmark {
+    private static final int BOTTOM_Z_INDEX = 0;
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int widgetCount;
+
+    @Param({"memory", "columnar", "durable"})
+    public String implementation;
+
+    private WidgetService widgetService;
+    private Path directory;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        directory = BenchmarkStores.temporaryDirectory();
+        widgetService = BenchmarkStores.create(implementation, directory);
+        BenchmarkStores.populate(widgetService, widgetCount, 42);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkStores.close(widgetService, directory);
+    }
+
+    @Benchmark
+    public Widget createAndDeleteOnTop() {
+        Widget widget = widgetService.createWidget(BenchmarkStores.randomRequest(ThreadLocalRandom.current(), null));
+        return widgetService.deleteWidgetById(widget.getId());
+    }
+
+    @Benchmark
+    public Widget createAndDeleteAtBottom() {
+        Widget widget = widgetService.createWidget(
+                BenchmarkStores.randomRequest(ThreadLocalRandom.current(), BOTTOM_Z_INDEX));
+        return widgetService.deleteWidgetById(widget.getId());
+    }
+
+    @Benchmark
+    public Widget updateWidget() {
+        return updateRandomWidget();
+    }
+
+    @Benchmark
+    public Widget getWidgetById() {
+        return widgetService.getWidgetById(randomId());
+    }
+
+    @Benchmark
+    public List<Widget> getAllWidgets() {
+        return widgetService.getAllWidgets();
+    }
+
+    @Benchmark
+    public List<Widget> getWidgetsByZIndex() {
+        return widgetService.getWidgetsByZIndex(ThreadLocalRandom.current().nextInt(widgetCount), Integer.MAX_VALUE,
+                PAGE_SIZE);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public List<Widget> mixedReadAll() {
+        return widgetService.getAllWidgets();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(4)
+    public Widget mixedReadOne() {
+        return widgetService.getWidgetById(randomId());
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public Widget mixedUpdate() {
+        return updateRandomWidget();
+    }
+
+    private Widget updateRandomWidget() {
+        Random random = ThreadLocalRandom.current();
+        long id = randomId();
+        Widget widget = widgetService.getWidgetById(id);
+        if (widget == null) {
+            return null;
+        }
+        return widgetService.updateWidgetById(id, BenchmarkStores.randomRequest(random, widget.getZIndex()));
+    }
+
+    private long randomId() {
+        return 1 + ThreadLocalRandom.current().nextInt(widgetCount);
+    }
+}
@@ -0,0 +1,44 @@
+package com.tianyupu.widgets;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "widgets.admission.enabled", matchIfMissing = true)
+public class AdmissionControlConfiguration {
+
+    @Bean
+    public FilterRegistrationBean<AdmissionControlFilter> admissionControlFilter(
+            MeterRegistry registry,
+            @Value("${widgets.admission.writes-per-second:0}") double writesPerSecond,
+            @Value("${widgets.admission.write-burst:0}") int writeBurst,
+            @Value("${widgets.admission.client-header:}") String clientHeader,
+            @Value("${widgets.admission.max-concurrent-writes:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}") int maxConcurrentWrites,
+            @Value("${widgets.admission.max-waiting-writes:32}") int maxWaitingWrites,
+            @Value("${widgets.admission.max-concurrent-reads:128}") int maxConcurrentReads,
+            @Value("${widgets.admission.max-waiting-reads:32}") int maxWaitingReads,
+            @Value("${widgets.admission.max-wait-millis:1000}") long maxWaitMillis
+    ) {
+        ClientRateLimiter rateLimiter = writesPerSecond > 0
+                ? new ClientRateLimiter(writesPerSecond, writeBurst > 0 ? writeBurst : (int) Math.ceil(writesPerSecond))
+                : null;
+        AdmissionControlFilter filter = new AdmissionControlFilter(
+                rateLimiter,
+                clientHeader.isEmpty() ? null : clientHeader,
+                new AdmissionQueue(maxConcurrentWrites, maxWaitingWrites, maxWaitMillis, TimeUnit.MILLISECONDS),
+                new AdmissionQueue(maxConcurrentReads, maxWaitingReads, maxWaitMillis, TimeUnit.MILLISECONDS),
+                registry
+        );
+        FilterRegistrationBean<AdmissionControlFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.addUrlPatterns("/widget", "/widget/*", "/widgets", "/widgets/*", "/boards/*");
+        return registration;
+    }
+}
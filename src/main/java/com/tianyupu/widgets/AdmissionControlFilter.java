@@ -0,0 +1,121 @@
+package com.tianyupu.widgets;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns requests away before they reach the controller when a client writes faster than its rate
+ * limit or the service has more work queued than it can finish in time.
+ *
+ * Writes are rate limited per client, identified by {@code clientHeader} or else by their remote
+ * address, and answered with {@code 429 Too Many Requests} when over the limit. Writes and reads
+ * are then admitted through separate queues, so a burst of writes cannot take the capacity that
+ * reads rely on; a request that the queue turns away gets {@code 503 Service Unavailable}. Both
+ * responses are sent without a body and carry {@code Retry-After}. Change streams are never
+ * queued, since they stay open.
+ */
+public class AdmissionControlFilter extends OncePerRequestFilter {
+    private final ClientRateLimiter rateLimiter;
+    private final String clientHeader;
+    private final AdmissionQueue writes;
+    private final AdmissionQueue reads;
+    private final Counter rateLimitedWrites;
+    private final Counter overloadedWrites;
+    private final Counter overloadedReads;
+
+    public AdmissionControlFilter(
+            ClientRateLimiter rateLimiter,
+            String clientHeader,
+            AdmissionQueue writes,
+            AdmissionQueue reads,
+            MeterRegistry registry
+    ) {
+        this.rateLimiter = rateLimiter;
+        this.clientHeader = clientHeader;
+        this.writes = writes;
+        this.reads = reads;
+        this.rateLimitedWrites = rejected(registry, "write", "rate-limited");
+        this.overloadedWrites = rejected(registry, "write", "overloaded");
+        this.overloadedReads = rejected(registry, "read", "overloaded");
+        Gauge.builder("widgets.admission.waiting", writes, AdmissionQueue::waiting)
+                .description("Requests waiting to be admitted")
+                .tag("kind", "write")
+                .register(registry);
+        Gauge.builder("widgets.admission.waiting", reads, AdmissionQueue::waiting)
+                .description("Requests waiting to be admitted")
+                .tag("kind", "read")
+                .register(registry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getRequestURI().endsWith("/changes");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        boolean write = isWrite(request);
+        if (write && rateLimiter != null) {
+            long wait = rateLimiter.tryAcquire(clientOf(request));
+            if (wait > 0) {
+                rateLimitedWrites.increment();
+                reject(response, HttpStatus.TOO_MANY_REQUESTS, wait);
+                return;
+            }
+        }
+
+        AdmissionQueue queue = write ? writes : reads;
+        if (!queue.enter()) {
+            (write ? overloadedWrites : overloadedReads).increment();
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, queue.maxWaitNanos());
+            return;
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            queue.exit();
+        }
+    }
+
+    private String clientOf(HttpServletRequest request) {
+        String client = clientHeader != null ? request.getHeader(clientHeader) : null;
+        return client != null ? client : request.getRemoteAddr();
+    }
+
+    private static boolean isWrite(HttpServletRequest request) {
+        switch (request.getMethod()) {
+            case "GET":
+            case "HEAD":
+            case "OPTIONS":
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    private static void reject(HttpServletResponse response, HttpStatus status, long waitNanos) {
+        long seconds = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(seconds));
+    }
+
+    private static Counter rejected(MeterRegistry registry, String kind, String reason) {
+        return Counter.builder("widgets.admission.rejected")
+                .description("Requests turned away before reaching the store")
+                .tag("kind", kind)
+                .tag("reason", reason)
+                .register(registry);
+    }
+}
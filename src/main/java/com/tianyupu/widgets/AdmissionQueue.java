@@ -0,0 +1,57 @@
+package com.tianyupu.widgets;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lets up to {@code maxConcurrent} requests run at once and up to {@code maxWaiting} more wait
+ * for a turn. A request that finds the queue full, or that has waited for {@code maxWait}, is
+ * turned away.
+ */
+public class AdmissionQueue {
+    private final Semaphore running;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final int maxWaiting;
+    private final long maxWaitNanos;
+
+    public AdmissionQueue(int maxConcurrent, int maxWaiting, long maxWait, TimeUnit unit) {
+        this.running = new Semaphore(maxConcurrent);
+        this.maxWaiting = maxWaiting;
+        this.maxWaitNanos = unit.toNanos(maxWait);
+    }
+
+    /**
+     * Returns whether the request was admitted. An admitted request must call {@link #exit()}
+     * once it has completed.
+     */
+    public boolean enter() {
+        if (running.tryAcquire()) {
+            return true;
+        }
+        if (waiting.incrementAndGet() > maxWaiting) {
+            waiting.decrementAndGet();
+            return false;
+        }
+        try {
+            return running.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    public void exit() {
+        running.release();
+    }
+
+    public int waiting() {
+        return waiting.get();
+    }
+
+    long maxWaitNanos() {
+        return maxWaitNanos;
+    }
+}
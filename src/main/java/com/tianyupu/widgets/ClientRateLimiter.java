@@ -0,0 +1,56 @@
+package com.tianyupu.widgets;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket per client, refilled at {@code permitsPerSecond} and holding up to {@code burst}
+ * tokens.
+ *
+ * Each bucket is a single timestamp: the time at which it will be full again. Taking a token
+ * moves it one refill interval further and is a compare-and-set, so clients never wait on each
+ * other. A bucket that has not been used for long enough to fill up is dropped, and recreated
+ * full on the client's next request.
+ */
+public class ClientRateLimiter {
+    private static final int MAX_CLIENTS = 100_000;
+
+    private final long interval;
+    private final long capacity;
+    private final Cache<String, AtomicLong> buckets;
+
+    public ClientRateLimiter(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("Rate and burst must be positive");
+        }
+        this.interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.capacity = interval * burst;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(MAX_CLIENTS)
+                .expireAfterAccess(capacity, TimeUnit.NANOSECONDS)
+                .build();
+    }
+
+    /**
+     * Takes a token from the client's bucket. Returns 0 if one was available, and otherwise the
+     * number of nanoseconds until one will be.
+     */
+    public long tryAcquire(String client) {
+        long now = System.nanoTime();
+        AtomicLong full = buckets.get(client, key -> new AtomicLong(now));
+        while (true) {
+            long current = full.get();
+            long next = (current - now > 0 ? current : now) + interval;
+            long excess = next - now - capacity;
+            if (excess > 0) {
+                return excess;
+            }
+            if (full.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+}
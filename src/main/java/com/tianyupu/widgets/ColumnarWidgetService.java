@@ -0,0 +1,445 @@
+package com.tianyupu.widgets;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
+
+/**
+ * A {@link WidgetService} that keeps widgets in primitive columns rather than as one object graph
+ * per widget, so that boards with millions of widgets take little heap and give the garbage
+ * collector almost nothing to trace.
+ *
+ * Every widget occupies a slot across parallel arrays. Ids map to slots through a
+ * {@link LongIntHashMap}, the z-order is a {@link ColumnarZOrderIndex} over the slots, and area
+ * and point queries use grids laid out like the {@link SpatialIndex}'s, whose cells are linked
+ * lists threaded through the slots. {@link Widget}s are
+ * only created for callers and are detached copies, so they do not follow later changes.
+ *
+ * All access goes through one read-write lock. A delta scans the change sequence column, so it
+ * costs time proportional to the board size rather than to the number of changes.
+ */
+public class ColumnarWidgetService implements WidgetService {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int NIL = ColumnarZOrderIndex.NIL;
+    private static final long FREE_ID = 0;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final LongIntHashMap slotsById = new LongIntHashMap();
+    private final LongIntHashMap cells = new LongIntHashMap();
+    private final ColumnarZOrderIndex zOrder = new ColumnarZOrderIndex(INITIAL_CAPACITY);
+    private final long firstSequence = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+    private final WidgetChangeFeed changes = new WidgetChangeFeed(WidgetChangeFeed.DEFAULT_CAPACITY, firstSequence);
+    private final WidgetChangeLog changeLog = new WidgetChangeLog(firstSequence);
+    private final int cellSize = SpatialIndex.DEFAULT_CELL_SIZE;
+    private final int[] widgetsOnLevel = new int[SpatialIndex.LEVELS];
+    private volatile IntConsumer shiftListener = shifted -> { };
+
+    private long[] id = new long[INITIAL_CAPACITY];
+    private int[] x = new int[INITIAL_CAPACITY];
+    private int[] y = new int[INITIAL_CAPACITY];
+    private int[] width = new int[INITIAL_CAPACITY];
+    private int[] height = new int[INITIAL_CAPACITY];
+    private long[] lastModified = new long[INITIAL_CAPACITY];
+    private long[] version = new long[INITIAL_CAPACITY];
+    private long[] changeSequence = new long[INITIAL_CAPACITY];
+    private int[] nextInCell = new int[INITIAL_CAPACITY];
+    private int[] previousInCell = new int[INITIAL_CAPACITY];
+    private int usedSlots;
+    private int freeSlot = NIL;
+    private long lastId;
+
+    @Override
+    public Widget createWidget(WidgetRequest widgetRequest) {
+        lock.writeLock().lock();
+        try {
+            return create(widgetRequest);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<WidgetBatchResult> applyBatch(List<WidgetBatchOperation> operations) {
+        lock.writeLock().lock();
+        try {
+            List<WidgetBatchResult> results = new ArrayList<>(operations.size());
+            for (WidgetBatchOperation operation : operations) {
+                results.add(applyOperation(operation));
+            }
+            return results;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Widget getWidgetById(long id) {
+        lock.readLock().lock();
+        try {
+            int slot = slotsById.get(id);
+            return slot != LongIntHashMap.MISSING ? widgetAt(slot, zOrder.zIndexOf(slot)) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Widget updateWidgetById(long id, WidgetRequest widgetRequest, WidgetPrecondition precondition) {
+        lock.writeLock().lock();
+        try {
+            int slot = slotsById.get(id);
+            if (slot == LongIntHashMap.MISSING) {
+                return null;
+            }
+            checkVersion(slot, precondition);
+
+            int zIndex = widgetRequest.getZIndex();
+            boolean moved = zOrder.zIndexOf(slot) != zIndex;
+            if (!moved && hasGeometry(slot, widgetRequest)) {
+                return widgetAt(slot, zIndex);
+            }
+            if (moved) {
+                int shifted = zOrder.moveOnto(slot, zIndex);
+                if (shifted > 0) {
+                    shiftListener.accept(shifted);
+                    changeLog.shifted(zIndex, changes.shifted(zIndex));
+                }
+            }
+
+            unplace(slot);
+            x[slot] = widgetRequest.getX();
+            y[slot] = widgetRequest.getY();
+            width[slot] = widgetRequest.getWidth();
+            height[slot] = widgetRequest.getHeight();
+            lastModified[slot] = System.currentTimeMillis();
+            version[slot]++;
+            place(slot);
+
+            Widget updated = widgetAt(slot, zIndex);
+            changeSequence[slot] = changes.updated(updated);
+            return updated;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Widget deleteWidgetById(long id, WidgetPrecondition precondition) {
+        lock.writeLock().lock();
+        try {
+            int slot = slotsById.get(id);
+            if (slot == LongIntHashMap.MISSING) {
+                return null;
+            }
+            checkVersion(slot, precondition);
+
+            Widget deleted = widgetAt(slot, zOrder.zIndexOf(slot));
+            slotsById.remove(id);
+            zOrder.remove(slot);
+            unplace(slot);
+            release(slot);
+            changeLog.deleted(id, changes.deleted(deleted));
+            return deleted;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Widget> getAllWidgets() {
+        return getWidgetsByZIndex(Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<Widget> getWidgetsByZIndex(int fromZIndex, int toZIndex, int limit) {
+        lock.readLock().lock();
+        try {
+            List<Widget> found = new ArrayList<>(Math.min(limit, zOrder.size()));
+            zOrder.visit(fromZIndex, toZIndex, limit, (slot, zIndex) -> found.add(widgetAt(slot, zIndex)));
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Widget> getWidgetsInArea(int x1, int y1, int x2, int y2) {
+        lock.readLock().lock();
+        try {
+            List<Widget> found = new ArrayList<>();
+            IntConsumer collect = head -> collectWithin(head, x1, y1, x2, y2, found);
+            long cellsToVisit = 0;
+            for (int level = 0; level < SpatialIndex.LEVELS && cellsToVisit <= cells.size(); level++) {
+                if (widgetsOnLevel[level] > 0) {
+                    cellsToVisit += (cellOf(x2, level) - cellOf(x1, level) + 1)
+                            * (cellOf(y2, level) - cellOf(y1, level) + 1);
+                }
+            }
+
+            if (cellsToVisit > cells.size()) {
+                cells.forEachValue(collect);
+            } else {
+                for (int level = 0; level < SpatialIndex.LEVELS; level++) {
+                    if (widgetsOnLevel[level] == 0) {
+                        continue;
+                    }
+                    for (long column = cellOf(x1, level); column <= cellOf(x2, level); column++) {
+                        for (long row = cellOf(y1, level); row <= cellOf(y2, level); row++) {
+                            int head = cells.get(SpatialIndex.cellKey(level, column, row));
+                            if (head != LongIntHashMap.MISSING) {
+                                collect.accept(head);
+                            }
+                        }
+                    }
+                }
+            }
+            found.sort(Comparator.comparingInt(Widget::getZIndex));
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Widget> getWidgetsAt(int pointX, int pointY, int limit) {
+        lock.readLock().lock();
+        try {
+            List<Widget> found = new ArrayList<>();
+            for (int level = 0; level < SpatialIndex.LEVELS; level++) {
+                if (widgetsOnLevel[level] == 0) {
+                    continue;
+                }
+                long size = (long) cellSize << level;
+                for (long column = cellOf(pointX - size + 1, level); column <= cellOf(pointX, level); column++) {
+                    for (long row = cellOf(pointY - size + 1, level); row <= cellOf(pointY, level); row++) {
+                        int head = cells.get(SpatialIndex.cellKey(level, column, row));
+                        if (head != LongIntHashMap.MISSING) {
+                            collectAt(head, pointX, pointY, found);
+                        }
+                    }
+                }
+            }
+            found.sort(Comparator.comparingInt(Widget::getZIndex).reversed());
+            return found.size() > limit ? new ArrayList<>(found.subList(0, limit)) : found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public WidgetDelta getWidgetsChangedSince(long sequence) {
+        lock.readLock().lock();
+        try {
+            long lastSequence = changes.lastSequence();
+            if (sequence > lastSequence || !changeLog.covers(sequence)) {
+                return WidgetChangeLog.reset(lastSequence, getAllWidgets());
+            }
+
+            int[] changedSlots = new int[16];
+            int changedCount = 0;
+            for (int slot = 0; slot < usedSlots; slot++) {
+                if (id[slot] != FREE_ID && changeSequence[slot] > sequence) {
+                    if (changedCount == changedSlots.length) {
+                        changedSlots = Arrays.copyOf(changedSlots, changedCount * 2);
+                    }
+                    changedSlots[changedCount++] = slot;
+                }
+            }
+            List<Widget> changedWidgets = new ArrayList<>(changedCount);
+            Arrays.stream(changedSlots, 0, changedCount)
+                    .boxed()
+                    .sorted(Comparator.comparingLong(slot -> changeSequence[slot]))
+                    .forEach(slot -> changedWidgets.add(widgetAt(slot, zOrder.zIndexOf(slot))));
+            return changeLog.since(sequence, lastSequence, changedWidgets);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int getWidgetCount() {
+        lock.readLock().lock();
+        try {
+            return slotsById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public synchronized void onZIndexShift(IntConsumer listener) {
+        shiftListener = shiftListener.andThen(listener);
+    }
+
+    @Override
+    public WidgetChangeFeed getChangeFeed() {
+        return changes;
+    }
+
+    private Widget create(WidgetRequest widgetRequest) {
+        int slot = allocate();
+        Integer zIndex = widgetRequest.getZIndex();
+        int placedZIndex;
+        if (zIndex == null) {
+            placedZIndex = zOrder.insertOnTop(slot);
+        } else {
+            boolean shifts = zOrder.size() > 0 && zOrder.maxZIndex() >= zIndex;
+            shiftListener.accept(zOrder.insert(slot, zIndex));
+            if (shifts) {
+                changeLog.shifted(zIndex, changes.shifted(zIndex));
+            }
+            placedZIndex = zIndex;
+        }
+
+        id[slot] = ++lastId;
+        x[slot] = widgetRequest.getX();
+        y[slot] = widgetRequest.getY();
+        width[slot] = widgetRequest.getWidth();
+        height[slot] = widgetRequest.getHeight();
+        lastModified[slot] = System.currentTimeMillis();
+        version[slot] = 1;
+        slotsById.put(lastId, slot);
+        place(slot);
+
+        Widget created = widgetAt(slot, placedZIndex);
+        changeSequence[slot] = changes.created(created);
+        return created;
+    }
+
+    private WidgetBatchResult applyOperation(WidgetBatchOperation operation) {
+        WidgetPrecondition precondition = WidgetPrecondition.version(operation.getVersion());
+        try {
+            if (operation.getType() == WidgetBatchOperation.Type.CREATE) {
+                return new WidgetBatchResult(WidgetBatchResult.Outcome.CREATED, create(operation.getWidget()));
+            }
+            if (operation.getType() == WidgetBatchOperation.Type.UPDATE) {
+                return Optional.ofNullable(updateWidgetById(operation.getId(), operation.getWidget(), precondition))
+                        .map(widget -> new WidgetBatchResult(WidgetBatchResult.Outcome.UPDATED, widget))
+                        .orElse(new WidgetBatchResult(WidgetBatchResult.Outcome.NOT_FOUND, null));
+            }
+            return Optional.ofNullable(deleteWidgetById(operation.getId(), precondition))
+                    .map(widget -> new WidgetBatchResult(WidgetBatchResult.Outcome.DELETED, widget))
+                    .orElse(new WidgetBatchResult(WidgetBatchResult.Outcome.NOT_FOUND, null));
+        } catch (WidgetVersionConflictException e) {
+            return new WidgetBatchResult(WidgetBatchResult.Outcome.CONFLICT, getWidgetById(operation.getId()));
+        }
+    }
+
+    private void checkVersion(int slot, WidgetPrecondition precondition) {
+        if (precondition != null && !precondition.matches(version[slot], zOrder.zIndexOf(slot))) {
+            throw new WidgetVersionConflictException(id[slot], precondition, version[slot], zOrder.zIndexOf(slot));
+        }
+    }
+
+    private boolean hasGeometry(int slot, WidgetRequest widgetRequest) {
+        return x[slot] == widgetRequest.getX()
+                && y[slot] == widgetRequest.getY()
+                && width[slot] == widgetRequest.getWidth()
+                && height[slot] == widgetRequest.getHeight();
+    }
+
+    private Widget widgetAt(int slot, int zIndex) {
+        return new Widget(x[slot], y[slot], width[slot], height[slot], zIndex, id[slot], version[slot],
+                new Date(lastModified[slot]));
+    }
+
+    private int allocate() {
+        if (freeSlot != NIL) {
+            int slot = freeSlot;
+            freeSlot = nextInCell[slot];
+            return slot;
+        }
+        if (usedSlots == id.length) {
+            grow(id.length * 2);
+        }
+        return usedSlots++;
+    }
+
+    private void release(int slot) {
+        id[slot] = FREE_ID;
+        nextInCell[slot] = freeSlot;
+        freeSlot = slot;
+    }
+
+    private void grow(int capacity) {
+        id = Arrays.copyOf(id, capacity);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        width = Arrays.copyOf(width, capacity);
+        height = Arrays.copyOf(height, capacity);
+        lastModified = Arrays.copyOf(lastModified, capacity);
+        version = Arrays.copyOf(version, capacity);
+        changeSequence = Arrays.copyOf(changeSequence, capacity);
+        nextInCell = Arrays.copyOf(nextInCell, capacity);
+        previousInCell = Arrays.copyOf(previousInCell, capacity);
+        zOrder.ensureCapacity(capacity);
+    }
+
+    private void place(int slot) {
+        int head = cells.put(cellKeyOf(slot), slot);
+        nextInCell[slot] = head != LongIntHashMap.MISSING ? head : NIL;
+        previousInCell[slot] = NIL;
+        if (head != LongIntHashMap.MISSING) {
+            previousInCell[head] = slot;
+        }
+        widgetsOnLevel[levelOf(slot)]++;
+    }
+
+    private void unplace(int slot) {
+        int previous = previousInCell[slot];
+        int next = nextInCell[slot];
+        if (previous != NIL) {
+            nextInCell[previous] = next;
+        } else if (next != NIL) {
+            cells.put(cellKeyOf(slot), next);
+        } else {
+            cells.remove(cellKeyOf(slot));
+        }
+        if (next != NIL) {
+            previousInCell[next] = previous;
+        }
+        widgetsOnLevel[levelOf(slot)]--;
+    }
+
+    private void collectWithin(int head, int x1, int y1, int x2, int y2, List<Widget> found) {
+        for (int slot = head; slot != NIL; slot = nextInCell[slot]) {
+            if (x[slot] >= x1
+                    && y[slot] >= y1
+                    && (long) x[slot] + width[slot] <= x2
+                    && (long) y[slot] + height[slot] <= y2) {
+                found.add(widgetAt(slot, zOrder.zIndexOf(slot)));
+            }
+        }
+    }
+
+    private void collectAt(int head, int pointX, int pointY, List<Widget> found) {
+        for (int slot = head; slot != NIL; slot = nextInCell[slot]) {
+            if (x[slot] <= pointX
+                    && y[slot] <= pointY
+                    && pointX < (long) x[slot] + width[slot]
+                    && pointY < (long) y[slot] + height[slot]) {
+                found.add(widgetAt(slot, zOrder.zIndexOf(slot)));
+            }
+        }
+    }
+
+    private int levelOf(int slot) {
+        return SpatialIndex.levelOf(width[slot], height[slot], cellSize);
+    }
+
+    private long cellKeyOf(int slot) {
+        int level = levelOf(slot);
+        return SpatialIndex.cellKey(level, cellOf(x[slot], level), cellOf(y[slot], level));
+    }
+
+    private long cellOf(long coordinate, int level) {
+        return Math.floorDiv(coordinate, (long) cellSize << level);
+    }
+}
@@ -0,0 +1,306 @@
+package com.tianyupu.widgets;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The z-order of a {@link ColumnarWidgetService}.
+ *
+ * This is the same treap with lazy z-index offsets as {@link ZOrderIndex}, but its nodes are
+ * widget slots and their links, counts and offsets live in parallel {@code int} arrays, so the
+ * index holds no object per widget. Writes must be serialized by the caller; reads may run
+ * concurrently with each other but not with writes.
+ */
+public class ColumnarZOrderIndex {
+    static final int NIL = -1;
+
+    private int[] left;
+    private int[] right;
+    private int[] parent;
+    private int[] count;
+    private int[] priority;
+    private int[] zIndex;
+    private int[] offset;
+    private int[] path = new int[64];
+    private int root = NIL;
+    private int size;
+    private int maxZIndex = Integer.MIN_VALUE;
+    private int splitLower;
+    private int splitUpper;
+
+    public ColumnarZOrderIndex(int capacity) {
+        left = new int[capacity];
+        right = new int[capacity];
+        parent = new int[capacity];
+        count = new int[capacity];
+        priority = new int[capacity];
+        zIndex = new int[capacity];
+        offset = new int[capacity];
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (capacity > left.length) {
+            left = Arrays.copyOf(left, capacity);
+            right = Arrays.copyOf(right, capacity);
+            parent = Arrays.copyOf(parent, capacity);
+            count = Arrays.copyOf(count, capacity);
+            priority = Arrays.copyOf(priority, capacity);
+            zIndex = Arrays.copyOf(zIndex, capacity);
+            offset = Arrays.copyOf(offset, capacity);
+        }
+    }
+
+    /**
+     * Inserts the slot at the given z-index, moving every slot at or above it up by one, and
+     * returns the number of slots moved.
+     */
+    public int insert(int slot, int z) {
+        split(root, z);
+        int lower = splitLower;
+        int upper = splitUpper;
+        int shifted = count(upper);
+        shift(upper, 1);
+        link(slot, z);
+        root = detachRoot(merge(merge(lower, slot), upper));
+        maxZIndex = size == 0 || maxZIndex < z ? z : maxZIndex + 1;
+        size++;
+        return shifted;
+    }
+
+    public int insertOnTop(int slot) {
+        int z = maxZIndex + 1;
+        link(slot, z);
+        root = detachRoot(merge(root, slot));
+        maxZIndex = z;
+        size++;
+        return z;
+    }
+
+    /**
+     * Moves the slot to the given z-index. If another slot already has that z-index, it and every
+     * slot above it move up by one first, as on an insert, so no two slots share a z-index.
+     * Returns the number of slots moved up.
+     */
+    public int moveOnto(int slot, int z) {
+        unlink(slot);
+        if (contains(z)) {
+            size--;
+            maxZIndex = lastZIndex();
+            return insert(slot, z);
+        }
+        relink(slot, z);
+        return 0;
+    }
+
+    public void remove(int slot) {
+        unlink(slot);
+        size--;
+        maxZIndex = size == 0 ? Integer.MIN_VALUE : lastZIndex();
+    }
+
+    public int zIndexOf(int slot) {
+        int z = zIndex[slot];
+        for (int ancestor = parent[slot]; ancestor != NIL; ancestor = parent[ancestor]) {
+            z += offset[ancestor];
+        }
+        return z;
+    }
+
+    public boolean contains(int z) {
+        int node = root;
+        int offsetSum = 0;
+        while (node != NIL) {
+            int nodeZ = zIndex[node] + offsetSum;
+            if (nodeZ == z) {
+                return true;
+            }
+            offsetSum += offset[node];
+            node = nodeZ < z ? right[node] : left[node];
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int maxZIndex() {
+        return maxZIndex;
+    }
+
+    /**
+     * Visits up to {@code limit} slots with a z-index between the given bounds, inclusive, in
+     * ascending z-index order.
+     */
+    public void visit(int fromZIndex, int toZIndex, int limit, Visitor visitor) {
+        visit(root, 0, fromZIndex, toZIndex, limit, visitor);
+    }
+
+    private int visit(int node, int offsetSum, int fromZIndex, int toZIndex, int limit, Visitor visitor) {
+        if (node == NIL || limit <= 0) {
+            return 0;
+        }
+        int z = zIndex[node] + offsetSum;
+        int childOffset = offsetSum + offset[node];
+        int visited = 0;
+        if (z >= fromZIndex) {
+            visited += visit(left[node], childOffset, fromZIndex, toZIndex, limit, visitor);
+        }
+        if (visited < limit && z >= fromZIndex && z <= toZIndex) {
+            visitor.visit(node, z);
+            visited++;
+        }
+        if (z <= toZIndex) {
+            visited += visit(right[node], childOffset, fromZIndex, toZIndex, limit - visited, visitor);
+        }
+        return visited;
+    }
+
+    private void link(int slot, int z) {
+        zIndex[slot] = z;
+        offset[slot] = 0;
+        count[slot] = 1;
+        priority[slot] = ThreadLocalRandom.current().nextInt();
+        left[slot] = NIL;
+        right[slot] = NIL;
+        parent[slot] = NIL;
+    }
+
+    private void relink(int slot, int z) {
+        split(root, z);
+        int lower = splitLower;
+        int upper = splitUpper;
+        link(slot, z);
+        root = detachRoot(merge(merge(lower, slot), upper));
+        maxZIndex = lastZIndex();
+    }
+
+    private void unlink(int slot) {
+        int depth = 0;
+        for (int ancestor = parent[slot]; ancestor != NIL; ancestor = parent[ancestor]) {
+            if (depth == path.length) {
+                path = Arrays.copyOf(path, depth * 2);
+            }
+            path[depth++] = ancestor;
+        }
+        while (depth > 0) {
+            pushDown(path[--depth]);
+        }
+        pushDown(slot);
+
+        int replacement = merge(left[slot], right[slot]);
+        int above = parent[slot];
+        if (replacement != NIL) {
+            parent[replacement] = above;
+        }
+        if (above == NIL) {
+            root = replacement;
+        } else if (left[above] == slot) {
+            left[above] = replacement;
+        } else {
+            right[above] = replacement;
+        }
+        for (int ancestor = above; ancestor != NIL; ancestor = parent[ancestor]) {
+            recount(ancestor);
+        }
+        left[slot] = NIL;
+        right[slot] = NIL;
+        parent[slot] = NIL;
+    }
+
+    private int lastZIndex() {
+        int current = root;
+        int offsetSum = 0;
+        while (right[current] != NIL) {
+            offsetSum += offset[current];
+            current = right[current];
+        }
+        return zIndex[current] + offsetSum;
+    }
+
+    private void split(int node, int z) {
+        if (node == NIL) {
+            splitLower = NIL;
+            splitUpper = NIL;
+            return;
+        }
+        pushDown(node);
+        if (zIndex[node] < z) {
+            split(right[node], z);
+            setRight(node, splitLower);
+            splitLower = detachRoot(node);
+        } else {
+            split(left[node], z);
+            setLeft(node, splitUpper);
+            splitUpper = detachRoot(node);
+        }
+    }
+
+    private int merge(int lower, int upper) {
+        if (lower == NIL) {
+            return upper;
+        }
+        if (upper == NIL) {
+            return lower;
+        }
+        if (priority[lower] > priority[upper]) {
+            pushDown(lower);
+            setRight(lower, merge(right[lower], upper));
+            return lower;
+        } else {
+            pushDown(upper);
+            setLeft(upper, merge(lower, left[upper]));
+            return upper;
+        }
+    }
+
+    private void shift(int node, int delta) {
+        if (node != NIL) {
+            zIndex[node] += delta;
+            offset[node] += delta;
+        }
+    }
+
+    private void pushDown(int node) {
+        if (offset[node] != 0) {
+            shift(left[node], offset[node]);
+            shift(right[node], offset[node]);
+            offset[node] = 0;
+        }
+    }
+
+    private void setLeft(int node, int child) {
+        left[node] = child;
+        if (child != NIL) {
+            parent[child] = node;
+        }
+        recount(node);
+    }
+
+    private void setRight(int node, int child) {
+        right[node] = child;
+        if (child != NIL) {
+            parent[child] = node;
+        }
+        recount(node);
+    }
+
+    private void recount(int node) {
+        count[node] = 1 + count(left[node]) + count(right[node]);
+    }
+
+    private int count(int node) {
+        return node != NIL ? count[node] : 0;
+    }
+
+    private int detachRoot(int node) {
+        if (node != NIL) {
+            parent[node] = NIL;
+        }
+        return node;
+    }
+
+    public interface Visitor {
+        void visit(int slot, int zIndex);
+    }
+}
@@ -1,34 +1,63 @@
 package com.tianyupu.widgets;
 
-import org.springframework.stereotype.Component;
-
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.IntConsumer;
 
-@Component
 public class DefaultWidgetService implements WidgetService {
-    private static final int PARALLELISM_THRESHOLD = 1;
     private final AtomicLong counter = new AtomicLong();
     private final ConcurrentHashMap<Long, Widget> widgets = new ConcurrentHashMap<>();
+    private final ZOrderIndex<Widget> zOrder = new ZOrderIndex<>(Widget::copyAt);
+    private final SpatialIndex spatialIndex = new SpatialIndex();
+    private final long firstSequence = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+    private final WidgetChangeFeed changes = new WidgetChangeFeed(WidgetChangeFeed.DEFAULT_CAPACITY, firstSequence);
+    private final WidgetChangeLog changeLog = new WidgetChangeLog(firstSequence);
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
     @Override
     public Widget createWidget(WidgetRequest widgetRequest) {
-        long newId = counter.incrementAndGet();
-        Widget newWidget = widgets.computeIfAbsent(newId, id -> new Widget(
-                widgetRequest.getX(),
-                widgetRequest.getY(),
-                widgetRequest.getWidth(),
-                widgetRequest.getHeight(),
-                Optional.ofNullable(widgetRequest.getZIndex()).orElse(getMaxZIndex() + 1),
-                id
-        ));
-        updateZIndexes(newWidget, 1);
-        return newWidget;
+        lock.writeLock().lock();
+        try {
+            return create(widgetRequest);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<WidgetBatchResult> applyBatch(List<WidgetBatchOperation> operations) {
+        return applyBatch(operations, (operation, result) -> { });
+    }
+
+    /**
+     * Applies a batch as {@link #applyBatch(List)} does, passing each operation and its result to
+     * {@code applied} before the next operation runs, while the widget is still as it left it.
+     */
+    List<WidgetBatchResult> applyBatch(
+            List<WidgetBatchOperation> operations,
+            BiConsumer<WidgetBatchOperation, WidgetBatchResult> applied
+    ) {
+        lock.writeLock().lock();
+        try {
+            List<WidgetBatchResult> results = new ArrayList<>(operations.size());
+            for (WidgetBatchOperation operation : operations) {
+                WidgetBatchResult result = applyOperation(operation);
+                applied.accept(operation, result);
+                results.add(result);
+            }
+            return results;
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     @Override
@@ -37,45 +66,329 @@ public class DefaultWidgetService implements WidgetService {
     }
 
     @Override
-    public Widget updateWidgetById(long id, WidgetRequest widgetRequest) {
-        Widget widget = getWidgetById(id);
+    public Widget updateWidgetById(long id, WidgetRequest widgetRequest, WidgetPrecondition precondition) {
+        lock.writeLock().lock();
+        try {
+            Widget widget = getWidgetById(id);
+            if (widget == null) {
+                return null;
+            }
+            checkVersion(widget, precondition);
 
-        widget.setX(widgetRequest.getX());
-        widget.setY(widgetRequest.getY());
-        widget.setWidth(widgetRequest.getWidth());
-        widget.setHeight(widgetRequest.getHeight());
-        widget.setZIndex(widgetRequest.getZIndex());
-
-        return widget;
+            int zIndex = widgetRequest.getZIndex();
+            boolean shifts = widget.getZIndex() != zIndex && zOrder.contains(zIndex);
+            boolean changed = widget.update(
+                    widgetRequest.getX(),
+                    widgetRequest.getY(),
+                    widgetRequest.getWidth(),
+                    widgetRequest.getHeight(),
+                    zIndex
+            );
+            if (changed) {
+                spatialIndex.update(widget);
+                if (shifts) {
+                    changeLog.shifted(zIndex, changes.shifted(zIndex));
+                }
+                changeLog.changed(widget, changes.updated(widget));
+            }
+            return widget;
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     @Override
-    public Widget deleteWidgetById(long id) {
-        return widgets.remove(id);
+    public Widget deleteWidgetById(long id, WidgetPrecondition precondition) {
+        lock.writeLock().lock();
+        try {
+            Widget widget = getWidgetById(id);
+            if (widget == null) {
+                return null;
+            }
+            checkVersion(widget, precondition);
+
+            widgets.remove(id);
+            zOrder.remove(widget.zOrderEntry());
+            spatialIndex.remove(widget);
+            changeLog.deleted(widget, changes.deleted(widget));
+            return widget;
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     @Override
     public List<Widget> getAllWidgets() {
-        return widgets.entrySet()
-                .stream()
-                .sorted(Comparator.comparingInt(e -> e.getValue().getZIndex()))
-                .map(Map.Entry::getValue)
-                .collect(Collectors.toList());
+        List<Widget> cached = zOrder.cachedValues();
+        if (cached != null) {
+            return cached;
+        }
+        lock.readLock().lock();
+        try {
+            return zOrder.values();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
-    private int getMaxZIndex() {
-        return widgets.reduceValuesToInt(PARALLELISM_THRESHOLD, Widget::getZIndex, Integer.MIN_VALUE, Math::max);
+    @Override
+    public List<Widget> getWidgetsByZIndex(int fromZIndex, int toZIndex, int limit) {
+        lock.readLock().lock();
+        try {
+            return zOrder.range(fromZIndex, toZIndex, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
-    private void updateZIndexes(Widget newWidget, int delta) {
-        widgets.forEach(
-                PARALLELISM_THRESHOLD,
-                (existingId, existingWidget) -> {
-                    if (existingWidget.getZIndex() >= newWidget.getZIndex()
-                            && !existingWidget.equals(newWidget)) {
-                        existingWidget.setZIndex(existingWidget.getZIndex() + delta);
-                    }
+    @Override
+    public List<Widget> getWidgetsInArea(int x1, int y1, int x2, int y2) {
+        lock.readLock().lock();
+        try {
+            List<Widget> found = spatialIndex.findWithin(x1, y1, x2, y2);
+            found.replaceAll(widget -> widget.copyAt(widget.getZIndex()));
+            found.sort(Comparator.comparingInt(Widget::getZIndex));
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Widget> getWidgetsAt(int x, int y, int limit) {
+        lock.readLock().lock();
+        try {
+            List<Widget> found = spatialIndex.findAt(x, y);
+            found.replaceAll(widget -> widget.copyAt(widget.getZIndex()));
+            found.sort(Comparator.comparingInt(Widget::getZIndex).reversed());
+            return found.size() > limit ? new ArrayList<>(found.subList(0, limit)) : found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public WidgetDelta getWidgetsChangedSince(long sequence) {
+        lock.readLock().lock();
+        try {
+            long lastSequence = changes.lastSequence();
+            if (sequence > lastSequence || !changeLog.covers(sequence)) {
+                return WidgetChangeLog.reset(lastSequence, getAllWidgets());
+            }
+            return changeLog.since(sequence, lastSequence);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int getWidgetCount() {
+        return widgets.size();
+    }
+
+    @Override
+    public void onZIndexShift(IntConsumer listener) {
+        zOrder.onShift(listener);
+    }
+
+    @Override
+    public WidgetChangeFeed getChangeFeed() {
+        return changes;
+    }
+
+    long lastId() {
+        return counter.get();
+    }
+
+    List<WidgetMutation> capture() {
+        List<Widget> all = getAllWidgets();
+        List<WidgetMutation> captured = new ArrayList<>(all.size());
+        for (Widget widget : all) {
+            captured.add(WidgetMutation.updated(widget));
+        }
+        return captured;
+    }
+
+    void restore(WidgetSnapshotFile.Snapshot snapshot) {
+        for (WidgetMutation restored : snapshot.getWidgets()) {
+            Widget widget = restoredWidget(restored);
+            zOrder.place(widget.zOrderEntry(), restored.getZIndex());
+            publish(widget);
+        }
+        counter.set(snapshot.getCounter());
+    }
+
+    void replay(WidgetMutation mutation) {
+        switch (mutation.getType()) {
+            case CREATE:
+                Widget widget = restoredWidget(mutation);
+                if (mutation.getZIndex() != null) {
+                    zOrder.insert(widget.zOrderEntry(), mutation.getZIndex());
+                } else {
+                    zOrder.insertOnTop(widget.zOrderEntry());
                 }
+                publish(widget);
+                counter.accumulateAndGet(mutation.getId(), Math::max);
+                break;
+            case UPDATE:
+                Widget existing = widgets.get(mutation.getId());
+                existing.restore(
+                        mutation.getX(),
+                        mutation.getY(),
+                        mutation.getWidth(),
+                        mutation.getHeight(),
+                        mutation.getZIndex(),
+                        mutation.getVersion(),
+                        new Date(mutation.getLastModified())
+                );
+                spatialIndex.update(existing);
+                break;
+            case DELETE:
+                deleteWidgetById(mutation.getId());
+                break;
+        }
+    }
+
+    /**
+     * Applies a change made on a replication leader, keeping its id, version and z-index, and
+     * publishes it like a local write so that change streams and caches of this store follow it.
+     * A creation or move onto a taken z-index shifts the widgets above it as it did on the leader.
+     */
+    void replicate(WidgetMutation mutation) {
+        lock.writeLock().lock();
+        try {
+            switch (mutation.getType()) {
+                case CREATE:
+                    Widget widget = restoredWidget(mutation);
+                    int zIndex = widget.getZIndex();
+                    boolean shifts = zOrder.size() > 0 && zOrder.maxZIndex() >= zIndex;
+                    zOrder.insert(widget.zOrderEntry(), zIndex);
+                    if (shifts) {
+                        changeLog.shifted(zIndex, changes.shifted(zIndex));
+                    }
+                    publish(widget);
+                    counter.accumulateAndGet(widget.getId(), Math::max);
+                    changeLog.changed(widget, changes.created(widget));
+                    break;
+                case UPDATE:
+                    Widget existing = widgets.get(mutation.getId());
+                    if (existing == null) {
+                        throw new IllegalStateException("Cannot replicate an update of unknown widget " + mutation.getId());
+                    }
+                    int toZIndex = mutation.getZIndex();
+                    boolean moves = existing.getZIndex() != toZIndex && zOrder.contains(toZIndex);
+                    existing.restore(
+                            mutation.getX(),
+                            mutation.getY(),
+                            mutation.getWidth(),
+                            mutation.getHeight(),
+                            toZIndex,
+                            mutation.getVersion(),
+                            new Date(mutation.getLastModified())
+                    );
+                    spatialIndex.update(existing);
+                    if (moves) {
+                        changeLog.shifted(toZIndex, changes.shifted(toZIndex));
+                    }
+                    changeLog.changed(existing, changes.updated(existing));
+                    break;
+                case DELETE:
+                    deleteWidgetById(mutation.getId());
+                    break;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces every widget with the given ones, which must be in ascending z-index order, as one
+     * write.
+     */
+    void replicateAll(List<WidgetMutation> snapshot) {
+        lock.writeLock().lock();
+        try {
+            for (Widget widget : zOrder.values()) {
+                deleteWidgetById(widget.getId());
+            }
+            for (WidgetMutation mutation : snapshot) {
+                replicate(mutation);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Widget restoredWidget(WidgetMutation mutation) {
+        return new Widget(
+                mutation.getX(),
+                mutation.getY(),
+                mutation.getWidth(),
+                mutation.getHeight(),
+                mutation.getZIndex() != null ? mutation.getZIndex() : 0,
+                mutation.getId(),
+                mutation.getVersion(),
+                new Date(mutation.getLastModified())
         );
     }
+
+    private Widget newWidget(WidgetRequest widgetRequest) {
+        Integer zIndex = widgetRequest.getZIndex();
+        return new Widget(
+                widgetRequest.getX(),
+                widgetRequest.getY(),
+                widgetRequest.getWidth(),
+                widgetRequest.getHeight(),
+                zIndex != null ? zIndex : 0,
+                counter.incrementAndGet()
+        );
+    }
+
+    private void publish(Widget newWidget) {
+        spatialIndex.add(newWidget);
+        widgets.put(newWidget.getId(), newWidget);
+    }
+
+    private Widget create(WidgetRequest widgetRequest) {
+        Widget newWidget = newWidget(widgetRequest);
+        Integer zIndex = widgetRequest.getZIndex();
+        if (zIndex == null) {
+            zOrder.insertOnTop(newWidget.zOrderEntry());
+        } else {
+            boolean shifts = zOrder.size() > 0 && zOrder.maxZIndex() >= zIndex;
+            zOrder.insert(newWidget.zOrderEntry(), zIndex);
+            if (shifts) {
+                changeLog.shifted(zIndex, changes.shifted(zIndex));
+            }
+        }
+        publish(newWidget);
+        changeLog.changed(newWidget, changes.created(newWidget));
+        return newWidget;
+    }
+
+    private WidgetBatchResult applyOperation(WidgetBatchOperation operation) {
+        WidgetPrecondition precondition = WidgetPrecondition.version(operation.getVersion());
+        try {
+            if (operation.getType() == WidgetBatchOperation.Type.CREATE) {
+                return new WidgetBatchResult(WidgetBatchResult.Outcome.CREATED, create(operation.getWidget()));
+            }
+            if (operation.getType() == WidgetBatchOperation.Type.UPDATE) {
+                return Optional.ofNullable(updateWidgetById(operation.getId(), operation.getWidget(), precondition))
+                        .map(widget -> new WidgetBatchResult(WidgetBatchResult.Outcome.UPDATED, widget))
+                        .orElse(new WidgetBatchResult(WidgetBatchResult.Outcome.NOT_FOUND, null));
+            }
+            return Optional.ofNullable(deleteWidgetById(operation.getId(), precondition))
+                    .map(widget -> new WidgetBatchResult(WidgetBatchResult.Outcome.DELETED, widget))
+                    .orElse(new WidgetBatchResult(WidgetBatchResult.Outcome.NOT_FOUND, null));
+        } catch (WidgetVersionConflictException e) {
+            return new WidgetBatchResult(WidgetBatchResult.Outcome.CONFLICT, getWidgetById(operation.getId()));
+        }
+    }
+
+    private void checkVersion(Widget widget, WidgetPrecondition precondition) {
+        if (precondition != null && !precondition.matches(widget.getVersion(), widget.getZIndex())) {
+            throw new WidgetVersionConflictException(
+                    widget.getId(), precondition, widget.getVersion(), widget.getZIndex());
+        }
+    }
 }
@@ -0,0 +1,218 @@
+package com.tianyupu.widgets;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+
+/**
+ * A {@link WidgetService} that survives restarts by recording every mutation in a
+ * {@link WriteAheadLog} and periodically writing a {@link WidgetSnapshotFile}.
+ *
+ * Mutations are applied to an in-memory {@link DefaultWidgetService} and appended to the log under
+ * one lock, so the log order is the order in which z-index shifts happened. Callers are answered
+ * once their record has been forced to disk. Reads go straight to the in-memory store.
+ */
+public class DurableWidgetService implements WidgetService, Closeable {
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ExecutorService snapshotWriter = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "widget-snapshot-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final DefaultWidgetService widgets = new DefaultWidgetService();
+    private final WidgetSnapshotFile snapshotFile;
+    private final WriteAheadLog log;
+    private final long snapshotInterval;
+    private long lastSnapshotSequence;
+
+    public DurableWidgetService(Path directory, int segmentSize, long snapshotInterval) {
+        this.snapshotInterval = snapshotInterval;
+        this.snapshotFile = new WidgetSnapshotFile(directory);
+        this.log = new WriteAheadLog(directory, segmentSize, recoverSnapshot(directory),
+                record -> widgets.replay(record.getMutation()));
+    }
+
+    @Override
+    public Widget createWidget(WidgetRequest widgetRequest) {
+        long sequence;
+        Widget newWidget;
+        writeLock.lock();
+        try {
+            newWidget = widgets.createWidget(widgetRequest);
+            sequence = log.append(WidgetMutation.created(newWidget, widgetRequest.getZIndex()));
+            snapshotIfDue(sequence);
+        } finally {
+            writeLock.unlock();
+        }
+        log.awaitDurable(sequence);
+        return newWidget;
+    }
+
+    @Override
+    public List<WidgetBatchResult> applyBatch(List<WidgetBatchOperation> operations) {
+        long sequence;
+        List<WidgetBatchResult> results;
+        writeLock.lock();
+        try {
+            results = widgets.applyBatch(operations, this::logBatchOperation);
+            sequence = log.lastSequence();
+            snapshotIfDue(sequence);
+        } finally {
+            writeLock.unlock();
+        }
+        log.awaitDurable(sequence);
+        return results;
+    }
+
+    private void logBatchOperation(WidgetBatchOperation operation, WidgetBatchResult result) {
+        switch (result.getOutcome()) {
+            case CREATED:
+                log.append(WidgetMutation.created(result.getWidget(), operation.getWidget().getZIndex()));
+                break;
+            case UPDATED:
+                log.append(WidgetMutation.updated(result.getWidget()));
+                break;
+            case DELETED:
+                log.append(WidgetMutation.deleted(result.getWidget()));
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public Widget getWidgetById(long id) {
+        return widgets.getWidgetById(id);
+    }
+
+    @Override
+    public Widget updateWidgetById(long id, WidgetRequest widgetRequest, WidgetPrecondition precondition) {
+        long sequence;
+        Widget updatedWidget;
+        writeLock.lock();
+        try {
+            updatedWidget = widgets.updateWidgetById(id, widgetRequest, precondition);
+            if (updatedWidget == null) {
+                return null;
+            }
+            sequence = log.append(WidgetMutation.updated(updatedWidget));
+            snapshotIfDue(sequence);
+        } finally {
+            writeLock.unlock();
+        }
+        log.awaitDurable(sequence);
+        return updatedWidget;
+    }
+
+    @Override
+    public Widget deleteWidgetById(long id, WidgetPrecondition precondition) {
+        long sequence;
+        Widget deletedWidget;
+        writeLock.lock();
+        try {
+            deletedWidget = widgets.deleteWidgetById(id, precondition);
+            if (deletedWidget == null) {
+                return null;
+            }
+            sequence = log.append(WidgetMutation.deleted(deletedWidget));
+            snapshotIfDue(sequence);
+        } finally {
+            writeLock.unlock();
+        }
+        log.awaitDurable(sequence);
+        return deletedWidget;
+    }
+
+    @Override
+    public List<Widget> getAllWidgets() {
+        return widgets.getAllWidgets();
+    }
+
+    @Override
+    public List<Widget> getWidgetsByZIndex(int fromZIndex, int toZIndex, int limit) {
+        return widgets.getWidgetsByZIndex(fromZIndex, toZIndex, limit);
+    }
+
+    @Override
+    public List<Widget> getWidgetsInArea(int x1, int y1, int x2, int y2) {
+        return widgets.getWidgetsInArea(x1, y1, x2, y2);
+    }
+
+    @Override
+    public List<Widget> getWidgetsAt(int x, int y, int limit) {
+        return widgets.getWidgetsAt(x, y, limit);
+    }
+
+    @Override
+    public WidgetDelta getWidgetsChangedSince(long sequence) {
+        return widgets.getWidgetsChangedSince(sequence);
+    }
+
+    @Override
+    public int getWidgetCount() {
+        return widgets.getWidgetCount();
+    }
+
+    @Override
+    public void onZIndexShift(IntConsumer listener) {
+        widgets.onZIndexShift(listener);
+    }
+
+    @Override
+    public WidgetChangeFeed getChangeFeed() {
+        return widgets.getChangeFeed();
+    }
+
+    public void snapshot() {
+        writeLock.lock();
+        try {
+            scheduleSnapshot(log.lastSequence());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        snapshotWriter.shutdown();
+        try {
+            snapshotWriter.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.close();
+    }
+
+    private long recoverSnapshot(Path directory) {
+        directory.toFile().mkdirs();
+        return snapshotFile.readLatest()
+                .map(snapshot -> {
+                    widgets.restore(snapshot);
+                    lastSnapshotSequence = snapshot.getSequence();
+                    return snapshot.getSequence();
+                })
+                .orElse(0L);
+    }
+
+    private void snapshotIfDue(long sequence) {
+        if (sequence - lastSnapshotSequence >= snapshotInterval) {
+            scheduleSnapshot(sequence);
+        }
+    }
+
+    private void scheduleSnapshot(long sequence) {
+        lastSnapshotSequence = sequence;
+        WidgetSnapshotFile.Snapshot snapshot = new WidgetSnapshotFile.Snapshot(
+                sequence, widgets.lastId(), widgets.capture());
+        snapshotWriter.execute(() -> {
+            log.awaitDurable(sequence);
+            snapshotFile.write(snapshot);
+            log.truncateBefore(sequence);
+        });
+    }
+}
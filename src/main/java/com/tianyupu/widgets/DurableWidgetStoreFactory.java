@@ -0,0 +1,55 @@
+package com.tianyupu.widgets;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Opens a {@link DurableWidgetService} per board. The default board keeps its log and snapshots
+ * directly in the configured directory, so existing data stays where it was; every other board
+ * gets its own directory under {@code boards}.
+ */
+public class DurableWidgetStoreFactory implements WidgetStoreFactory {
+    private static final String BOARDS_DIRECTORY = "boards";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long snapshotInterval;
+
+    public DurableWidgetStoreFactory(Path directory, int segmentSize, long snapshotInterval) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    @Override
+    public WidgetService create(String board) {
+        return new DurableWidgetService(directoryOf(board), segmentSize, snapshotInterval);
+    }
+
+    @Override
+    public Collection<String> existingBoards() {
+        Path boards = directory.resolve(BOARDS_DIRECTORY);
+        if (!Files.isDirectory(boards)) {
+            return Collections.emptyList();
+        }
+        try (Stream<Path> files = Files.list(boards)) {
+            return files.filter(Files::isDirectory)
+                    .map(path -> path.getFileName().toString())
+                    .filter(WidgetBoards::isValidName)
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path directoryOf(String board) {
+        return WidgetBoards.DEFAULT_BOARD.equals(board) ? directory : directory.resolve(BOARDS_DIRECTORY).resolve(board);
+    }
+}
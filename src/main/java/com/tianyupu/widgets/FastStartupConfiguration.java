@@ -0,0 +1,68 @@
+package com.tianyupu.widgets;
+
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+
+/**
+ * Start-up options used by the {@code fast-startup} profile.
+ *
+ * {@code widgets.startup.lazy-initialization} creates beans on first use instead of at start-up.
+ * Beans declared with {@link Lazy @Lazy(false)} are still created eagerly. With
+ * {@code widgets.startup.training-run}, the service creates every bean once it has started and
+ * then exits, so that a class-data sharing archive recorded from that run covers the classes
+ * that lazy initialization would otherwise load during the first requests.
+ */
+@Configuration
+public class FastStartupConfiguration {
+
+    @Bean
+    @ConditionalOnProperty("widgets.startup.lazy-initialization")
+    public static BeanFactoryPostProcessor lazyInitialization() {
+        return beanFactory -> {
+            for (String name : beanFactory.getBeanDefinitionNames()) {
+                BeanDefinition definition = beanFactory.getBeanDefinition(name);
+                if (!isDeclaredLazyOrEager(definition)) {
+                    definition.setLazyInit(true);
+                }
+            }
+        };
+    }
+
+    @Bean
+    @ConditionalOnProperty("widgets.startup.training-run")
+    public ApplicationListener<ApplicationReadyEvent> exitAfterTrainingRun() {
+        return event -> {
+            ConfigurableApplicationContext context = event.getApplicationContext();
+            ConfigurableListableBeanFactory beanFactory = context.getBeanFactory();
+            for (String name : beanFactory.getBeanDefinitionNames()) {
+                BeanDefinition definition = beanFactory.getBeanDefinition(name);
+                if (definition.isSingleton() && !definition.isAbstract()) {
+                    beanFactory.getBean(name);
+                }
+            }
+            System.exit(SpringApplication.exit(context));
+        };
+    }
+
+    private static boolean isDeclaredLazyOrEager(BeanDefinition definition) {
+        if (!(definition instanceof AnnotatedBeanDefinition)) {
+            return false;
+        }
+        AnnotatedBeanDefinition annotated = (AnnotatedBeanDefinition) definition;
+        AnnotatedTypeMetadata metadata = annotated.getFactoryMethodMetadata() != null
+                ? annotated.getFactoryMethodMetadata()
+                : annotated.getMetadata();
+        return metadata.isAnnotated(Lazy.class.getName());
+    }
+}
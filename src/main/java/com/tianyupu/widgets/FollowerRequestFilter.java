@@ -0,0 +1,64 @@
+package com.tianyupu.widgets;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+import static org.springframework.http.HttpStatus.METHOD_NOT_ALLOWED;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+
+/**
+ * Serves reads on a follower only while it is at most {@code maxStalenessMillis} behind its
+ * leader, answering {@code 503 Service Unavailable} otherwise, and refuses writes with
+ * {@code 405 Method Not Allowed}, since they belong on the leader. Change streams are always
+ * served, and catch up with the leader on their own.
+ */
+public class FollowerRequestFilter extends OncePerRequestFilter {
+    static final String ALLOWED_METHODS = "GET, HEAD";
+    static final String RETRY_AFTER_SECONDS = "1";
+
+    private final ReplicationFollower follower;
+    private final long maxStalenessMillis;
+
+    public FollowerRequestFilter(ReplicationFollower follower, long maxStalenessMillis) {
+        this.follower = follower;
+        this.maxStalenessMillis = maxStalenessMillis;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getRequestURI().endsWith("/changes");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        HttpStatus refusal = refusalOf(follower, maxStalenessMillis, request.getMethod());
+        if (refusal == METHOD_NOT_ALLOWED) {
+            response.setStatus(refusal.value());
+            response.setHeader(HttpHeaders.ALLOW, ALLOWED_METHODS);
+        } else if (refusal == SERVICE_UNAVAILABLE) {
+            response.setStatus(refusal.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS);
+        } else {
+            chain.doFilter(request, response);
+        }
+    }
+
+    /**
+     * Returns the status a follower answers a widget request with instead of serving it, or null
+     * if it may serve it.
+     */
+    static HttpStatus refusalOf(ReplicationFollower follower, long maxStalenessMillis, String method) {
+        if (!method.equals("GET") && !method.equals("HEAD")) {
+            return METHOD_NOT_ALLOWED;
+        }
+        return follower.staleness() > maxStalenessMillis ? SERVICE_UNAVAILABLE : null;
+    }
+}
@@ -0,0 +1,53 @@
+package com.tianyupu.widgets;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import static org.springframework.http.HttpStatus.METHOD_NOT_ALLOWED;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+
+/**
+ * Applies the checks of {@link FollowerRequestFilter} to the widget routes of a follower running
+ * in the reactive serving mode.
+ */
+public class FollowerWebFilter implements WebFilter {
+    private final ReplicationFollower follower;
+    private final long maxStalenessMillis;
+
+    public FollowerWebFilter(ReplicationFollower follower, long maxStalenessMillis) {
+        this.follower = follower;
+        this.maxStalenessMillis = maxStalenessMillis;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        String path = exchange.getRequest().getPath().pathWithinApplication().value();
+        if (!isWidgetPath(path) || path.endsWith("/changes")) {
+            return chain.filter(exchange);
+        }
+        HttpStatus refusal = FollowerRequestFilter.refusalOf(
+                follower, maxStalenessMillis, exchange.getRequest().getMethodValue());
+        if (refusal == null) {
+            return chain.filter(exchange);
+        }
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(refusal);
+        if (refusal == METHOD_NOT_ALLOWED) {
+            response.getHeaders().set(HttpHeaders.ALLOW, FollowerRequestFilter.ALLOWED_METHODS);
+        } else if (refusal == SERVICE_UNAVAILABLE) {
+            response.getHeaders().set(HttpHeaders.RETRY_AFTER, FollowerRequestFilter.RETRY_AFTER_SECONDS);
+        }
+        return response.setComplete();
+    }
+
+    private static boolean isWidgetPath(String path) {
+        return path.equals("/widget") || path.startsWith("/widget/")
+                || path.equals("/widgets") || path.startsWith("/widgets/")
+                || path.startsWith("/boards/");
+    }
+}
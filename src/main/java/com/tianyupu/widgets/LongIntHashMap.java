@@ -0,0 +1,138 @@
+package com.tianyupu.widgets;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * An open-addressing hash map from {@code long} keys to {@code int} values, kept in two primitive
+ * arrays so that entries cost no objects.
+ *
+ * Collisions are resolved by linear probing and removals shift later entries back instead of
+ * leaving tombstones. {@link Long#MIN_VALUE} marks free buckets and cannot be used as a key. Not
+ * thread-safe.
+ */
+public class LongIntHashMap {
+    static final int MISSING = -1;
+    private static final long FREE = Long.MIN_VALUE;
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    public LongIntHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public LongIntHashMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity / 3 * 2 < expectedSize) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    public int get(long key) {
+        for (int i = bucketOf(key); ; i = (i + 1) & mask) {
+            long candidate = keys[i];
+            if (candidate == FREE) {
+                return MISSING;
+            }
+            if (candidate == key) {
+                return values[i];
+            }
+        }
+    }
+
+    public int put(long key, int value) {
+        if (key == FREE) {
+            throw new IllegalArgumentException("Long.MIN_VALUE cannot be used as a key");
+        }
+        for (int i = bucketOf(key); ; i = (i + 1) & mask) {
+            long candidate = keys[i];
+            if (candidate == FREE) {
+                keys[i] = key;
+                values[i] = value;
+                if (++size > resizeAt) {
+                    rehash(keys.length << 1);
+                }
+                return MISSING;
+            }
+            if (candidate == key) {
+                int previous = values[i];
+                values[i] = value;
+                return previous;
+            }
+        }
+    }
+
+    public int remove(long key) {
+        for (int i = bucketOf(key); ; i = (i + 1) & mask) {
+            long candidate = keys[i];
+            if (candidate == FREE) {
+                return MISSING;
+            }
+            if (candidate == key) {
+                int previous = values[i];
+                closeGap(i);
+                size--;
+                return previous;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void forEachValue(IntConsumer action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) {
+                action.accept(values[i]);
+            }
+        }
+    }
+
+    private void closeGap(int gap) {
+        for (int i = (gap + 1) & mask; keys[i] != FREE; i = (i + 1) & mask) {
+            int home = bucketOf(keys[i]);
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+        keys[gap] = FREE;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int bucket = bucketOf(oldKeys[i]);
+                while (keys[bucket] != FREE) {
+                    bucket = (bucket + 1) & mask;
+                }
+                keys[bucket] = oldKeys[i];
+                values[bucket] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, FREE);
+        values = new int[capacity];
+        mask = capacity - 1;
+        resizeAt = capacity / 3 * 2;
+    }
+
+    private int bucketOf(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
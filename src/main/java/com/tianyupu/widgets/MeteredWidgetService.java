@@ -0,0 +1,186 @@
+package com.tianyupu.widgets;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/**
+ * Records a latency histogram per {@link WidgetService} operation, the number of widgets shifted by
+ * each z-index insert and the store size. All meters are registered up front, so recording a call is
+ * two {@link System#nanoTime()} reads and a histogram update. The store size is tagged with the
+ * board; latencies and shifts are shared by all boards to keep the number of series bounded.
+ */
+public class MeteredWidgetService implements WidgetService, Closeable {
+    private final WidgetService delegate;
+    private final Timer createTimer;
+    private final Timer batchTimer;
+    private final Timer getTimer;
+    private final Timer updateTimer;
+    private final Timer deleteTimer;
+    private final Timer getAllTimer;
+    private final Timer zIndexRangeTimer;
+    private final Timer areaTimer;
+    private final Timer pointTimer;
+    private final Timer deltaTimer;
+
+    public MeteredWidgetService(WidgetService delegate, MeterRegistry registry, String board) {
+        this.delegate = delegate;
+        this.createTimer = timer(registry, "create");
+        this.batchTimer = timer(registry, "batch");
+        this.getTimer = timer(registry, "get");
+        this.updateTimer = timer(registry, "update");
+        this.deleteTimer = timer(registry, "delete");
+        this.getAllTimer = timer(registry, "getAll");
+        this.zIndexRangeTimer = timer(registry, "zIndexRange");
+        this.areaTimer = timer(registry, "area");
+        this.pointTimer = timer(registry, "point");
+        this.deltaTimer = timer(registry, "delta");
+
+        Gauge.builder("widgets.store.size", delegate, WidgetService::getWidgetCount)
+                .description("Number of widgets in the store")
+                .tag("board", board)
+                .register(registry);
+        DistributionSummary shifted = DistributionSummary.builder("widgets.zindex.shifted")
+                .description("Widgets whose z-index was shifted by a single insert")
+                .publishPercentileHistogram()
+                .register(registry);
+        delegate.onZIndexShift(shifted::record);
+    }
+
+    @Override
+    public Widget createWidget(WidgetRequest widgetRequest) {
+        long start = System.nanoTime();
+        try {
+            return delegate.createWidget(widgetRequest);
+        } finally {
+            createTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public List<WidgetBatchResult> applyBatch(List<WidgetBatchOperation> operations) {
+        long start = System.nanoTime();
+        try {
+            return delegate.applyBatch(operations);
+        } finally {
+            batchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public Widget getWidgetById(long id) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getWidgetById(id);
+        } finally {
+            getTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public Widget updateWidgetById(long id, WidgetRequest widgetRequest, WidgetPrecondition precondition) {
+        long start = System.nanoTime();
+        try {
+            return delegate.updateWidgetById(id, widgetRequest, precondition);
+        } finally {
+            updateTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public Widget deleteWidgetById(long id, WidgetPrecondition precondition) {
+        long start = System.nanoTime();
+        try {
+            return delegate.deleteWidgetById(id, precondition);
+        } finally {
+            deleteTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public List<Widget> getAllWidgets() {
+        long start = System.nanoTime();
+        try {
+            return delegate.getAllWidgets();
+        } finally {
+            getAllTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public List<Widget> getWidgetsByZIndex(int fromZIndex, int toZIndex, int limit) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getWidgetsByZIndex(fromZIndex, toZIndex, limit);
+        } finally {
+            zIndexRangeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public List<Widget> getWidgetsInArea(int x1, int y1, int x2, int y2) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getWidgetsInArea(x1, y1, x2, y2);
+        } finally {
+            areaTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public List<Widget> getWidgetsAt(int x, int y, int limit) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getWidgetsAt(x, y, limit);
+        } finally {
+            pointTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public WidgetDelta getWidgetsChangedSince(long sequence) {
+        long start = System.nanoTime();
+        try {
+            return delegate.getWidgetsChangedSince(sequence);
+        } finally {
+            deltaTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public int getWidgetCount() {
+        return delegate.getWidgetCount();
+    }
+
+    @Override
+    public void onZIndexShift(IntConsumer listener) {
+        delegate.onZIndexShift(listener);
+    }
+
+    @Override
+    public WidgetChangeFeed getChangeFeed() {
+        return delegate.getChangeFeed();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (delegate instanceof Closeable) {
+            ((Closeable) delegate).close();
+        }
+    }
+
+    private static Timer timer(MeterRegistry registry, String operation) {
+        return Timer.builder("widgets.service")
+                .description("Latency of widget service operations")
+                .tag("operation", operation)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+}
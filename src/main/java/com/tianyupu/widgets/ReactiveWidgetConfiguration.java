@@ -0,0 +1,38 @@
+package com.tianyupu.widgets;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import static org.springframework.web.reactive.function.server.RequestPredicates.DELETE;
+import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
+import static org.springframework.web.reactive.function.server.RequestPredicates.POST;
+import static org.springframework.web.reactive.function.server.RequestPredicates.PUT;
+import static org.springframework.web.reactive.function.server.RequestPredicates.path;
+import static org.springframework.web.reactive.function.server.RouterFunctions.nest;
+import static org.springframework.web.reactive.function.server.RouterFunctions.route;
+
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveWidgetConfiguration {
+
+    @Bean
+    public ReactiveWidgetHandler reactiveWidgetHandler(WidgetBoards widgetBoards) {
+        return new ReactiveWidgetHandler(widgetBoards);
+    }
+
+    @Bean
+    public RouterFunction<ServerResponse> widgetRoutes(ReactiveWidgetHandler handler) {
+        RouterFunction<ServerResponse> routes = route(POST("/widget"), handler::createWidget)
+                .andRoute(POST("/widgets/batch"), handler::applyBatch)
+                .andRoute(GET("/widget/{id}"), handler::getWidgetById)
+                .andRoute(PUT("/widget/{id}"), handler::updateWidgetById)
+                .andRoute(DELETE("/widget/{id}"), handler::deleteWidgetById)
+                .andRoute(GET("/widgets"), handler::getAllWidgets)
+                .andRoute(GET("/widgets/at"), handler::getWidgetsAt)
+                .andRoute(GET("/widgets/changes"), handler::getChanges);
+        return routes.and(nest(path("/boards/{board}"), routes));
+    }
+}
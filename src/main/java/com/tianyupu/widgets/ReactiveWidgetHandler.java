@@ -0,0 +1,292 @@
+package com.tianyupu.widgets;
+
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+
+import static com.tianyupu.widgets.WidgetController.MAX_BATCH_SIZE;
+import static com.tianyupu.widgets.WidgetController.eTagOf;
+import static com.tianyupu.widgets.WidgetController.isValidBatchOperation;
+import static com.tianyupu.widgets.WidgetController.isValidCreateRequest;
+import static com.tianyupu.widgets.WidgetController.isValidIfMatch;
+import static com.tianyupu.widgets.WidgetController.isValidUpdateRequest;
+import static com.tianyupu.widgets.WidgetController.preconditionOf;
+import static com.tianyupu.widgets.WidgetController.readableBoard;
+import static com.tianyupu.widgets.WidgetController.serverSentEvents;
+import static com.tianyupu.widgets.WidgetController.writableBoard;
+
+/**
+ * The {@link WidgetController} endpoints as WebFlux handler functions, used when the service is
+ * started with {@code spring.main.web-application-type=reactive}.
+ *
+ * Reads are answered on the event loop. Writes may wait for the durable store to force its log,
+ * so they run on a separate scheduler. {@code GET /widgets} streams the widgets one JSON document
+ * per line when the client accepts {@code application/x-ndjson} or {@code application/stream+json}.
+ * Lines are encoded and written in chunks rather than flushed one widget at a time. Widget lists are
+ * encoded with {@link WidgetJsonWriter} unless the client asks for Smile. Every endpoint is also
+ * routed under {@code /boards/{board}}.
+ */
+public class ReactiveWidgetHandler {
+    static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    static final MediaType APPLICATION_SMILE = MediaType.parseMediaType("application/x-jackson-smile");
+    private static final int STREAM_CHUNK_SIZE = 256;
+
+    private static final ParameterizedTypeReference<List<WidgetBatchOperation>> BATCH_TYPE =
+            new ParameterizedTypeReference<List<WidgetBatchOperation>>() { };
+
+    private final WidgetBoards boards;
+
+    public ReactiveWidgetHandler(WidgetBoards boards) {
+        this.boards = boards;
+    }
+
+    public Mono<ServerResponse> createWidget(ServerRequest request) {
+        String board = boardOf(request);
+        return request.bodyToMono(WidgetRequest.class)
+                .filter(WidgetController::isValidCreateRequest)
+                .flatMap(widgetRequest -> write(() -> writableBoard(boards, board).createWidget(widgetRequest)))
+                .flatMap(widget -> ServerResponse.status(HttpStatus.CREATED).eTag(eTagOf(widget)).syncBody(widget))
+                .switchIfEmpty(ServerResponse.badRequest().build());
+    }
+
+    public Mono<ServerResponse> applyBatch(ServerRequest request) {
+        String board = boardOf(request);
+        return request.bodyToMono(BATCH_TYPE)
+                .filter(operations -> operations.size() <= MAX_BATCH_SIZE
+                        && operations.stream().allMatch(WidgetController::isValidBatchOperation))
+                .flatMap(operations -> write(() -> writableBoard(boards, board).applyBatch(operations)))
+                .flatMap(results -> ServerResponse.ok().syncBody(results))
+                .switchIfEmpty(ServerResponse.badRequest().build());
+    }
+
+    public Mono<ServerResponse> getWidgetById(ServerRequest request) {
+        Widget widget = readableBoard(boards, boardOf(request)).getWidgetById(idOf(request));
+        if (widget == null) {
+            return ServerResponse.notFound().build();
+        }
+
+        String eTag = eTagOf(widget);
+        if (request.headers().asHttpHeaders().getIfNoneMatch().contains(eTag)) {
+            return ServerResponse.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+        return ServerResponse.ok().eTag(eTag).syncBody(widget);
+    }
+
+    public Mono<ServerResponse> updateWidgetById(ServerRequest request) {
+        WidgetService widgetService = readableBoard(boards, boardOf(request));
+        long id = idOf(request);
+        String ifMatch = request.headers().asHttpHeaders().getFirst(HttpHeaders.IF_MATCH);
+        return request.bodyToMono(WidgetRequest.class)
+                .filter(WidgetController::isValidUpdateRequest)
+                .flatMap(widgetRequest -> {
+                    if (!isValidIfMatch(ifMatch)) {
+                        return ServerResponse.status(HttpStatus.PRECONDITION_FAILED).build();
+                    }
+                    return write(() -> widgetService.updateWidgetById(id, widgetRequest, preconditionOf(ifMatch)))
+                            .flatMap(widget -> ServerResponse.ok().eTag(eTagOf(widget)).syncBody(widget))
+                            .switchIfEmpty(ServerResponse.notFound().build());
+                })
+                .switchIfEmpty(ServerResponse.badRequest().build())
+                .onErrorResume(WidgetVersionConflictException.class,
+                        e -> ServerResponse.status(HttpStatus.PRECONDITION_FAILED).build());
+    }
+
+    public Mono<ServerResponse> deleteWidgetById(ServerRequest request) {
+        WidgetService widgetService = readableBoard(boards, boardOf(request));
+        long id = idOf(request);
+        String ifMatch = request.headers().asHttpHeaders().getFirst(HttpHeaders.IF_MATCH);
+        if (!isValidIfMatch(ifMatch)) {
+            return ServerResponse.status(HttpStatus.PRECONDITION_FAILED).build();
+        }
+
+        return write(() -> widgetService.deleteWidgetById(id, preconditionOf(ifMatch)))
+                .flatMap(widget -> ServerResponse.ok().syncBody(widget))
+                .switchIfEmpty(ServerResponse.notFound().build())
+                .onErrorResume(WidgetVersionConflictException.class,
+                        e -> ServerResponse.status(HttpStatus.PRECONDITION_FAILED).build());
+    }
+
+    public Mono<ServerResponse> getAllWidgets(ServerRequest request) {
+        WidgetService widgetService = readableBoard(boards, boardOf(request));
+        if (request.queryParam("since").isPresent()) {
+            if (request.queryParams().size() > 1) {
+                return ServerResponse.badRequest().build();
+            }
+            return ServerResponse.ok().syncBody(widgetService.getWidgetsChangedSince(longParam(request, "since")));
+        }
+
+        Integer after = intParam(request, "after");
+        Integer minZIndex = intParam(request, "minZIndex");
+        Integer maxZIndex = intParam(request, "maxZIndex");
+        Integer limit = intParam(request, "limit");
+        Integer x1 = intParam(request, "x1");
+        Integer y1 = intParam(request, "y1");
+        Integer x2 = intParam(request, "x2");
+        Integer y2 = intParam(request, "y2");
+
+        boolean zIndexQuery = after != null || minZIndex != null || maxZIndex != null || limit != null;
+        boolean areaQuery = x1 != null || y1 != null || x2 != null || y2 != null;
+
+        if (zIndexQuery && areaQuery) {
+            return ServerResponse.badRequest().build();
+        }
+        if (areaQuery) {
+            if (x1 == null || y1 == null || x2 == null || y2 == null || x1 > x2 || y1 > y2) {
+                return ServerResponse.badRequest().build();
+            }
+            return widgets(request, ServerResponse.ok(), widgetService.getWidgetsInArea(x1, y1, x2, y2));
+        }
+        if (zIndexQuery) {
+            return getWidgetsByZIndex(request, widgetService, after, minZIndex, maxZIndex, limit);
+        }
+        return widgets(request, ServerResponse.ok(), widgetService.getAllWidgets());
+    }
+
+    public Mono<ServerResponse> getWidgetsAt(ServerRequest request) {
+        Integer x = intParam(request, "x");
+        Integer y = intParam(request, "y");
+        Integer limit = intParam(request, "limit");
+        if (x == null || y == null || (limit != null && limit <= 0)) {
+            return ServerResponse.badRequest().build();
+        }
+
+        WidgetService widgetService = readableBoard(boards, boardOf(request));
+        int stackSize = Optional.ofNullable(limit).orElse(Integer.MAX_VALUE);
+        return widgets(request, ServerResponse.ok(), widgetService.getWidgetsAt(x, y, stackSize));
+    }
+
+    public Mono<ServerResponse> getChanges(ServerRequest request) {
+        String lastEventId = request.headers().asHttpHeaders().getFirst("Last-Event-ID");
+        Long since = lastEventId != null ? parseLong(lastEventId, "Last-Event-ID") : longParam(request, "since");
+        WidgetChangeFeed changes = readableBoard(boards, boardOf(request)).getChangeFeed();
+        return ServerResponse.ok()
+                .contentType(MediaType.TEXT_EVENT_STREAM)
+                .body(BodyInserters.fromServerSentEvents(serverSentEvents(changes.subscribe(since))));
+    }
+
+    private Mono<ServerResponse> getWidgetsByZIndex(
+            ServerRequest request,
+            WidgetService widgetService,
+            Integer after,
+            Integer minZIndex,
+            Integer maxZIndex,
+            Integer limit
+    ) {
+        if ((limit != null && limit <= 0) || (after != null && after == Integer.MAX_VALUE)) {
+            return ServerResponse.badRequest().build();
+        }
+
+        int fromZIndex = Math.max(
+                Optional.ofNullable(minZIndex).orElse(Integer.MIN_VALUE),
+                Optional.ofNullable(after).map(z -> z + 1).orElse(Integer.MIN_VALUE)
+        );
+        int toZIndex = Optional.ofNullable(maxZIndex).orElse(Integer.MAX_VALUE);
+        int pageSize = Optional.ofNullable(limit).orElse(Integer.MAX_VALUE);
+
+        List<Widget> page = widgetService.getWidgetsByZIndex(fromZIndex, toZIndex, pageSize);
+        if (page.size() < pageSize) {
+            return widgets(request, ServerResponse.ok(), page);
+        }
+
+        String next = request.uriBuilder()
+                .replaceQueryParam("after", page.get(page.size() - 1).getZIndex())
+                .build()
+                .toString();
+        return widgets(request, ServerResponse.ok().header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\""), page);
+    }
+
+    private Mono<ServerResponse> widgets(ServerRequest request, ServerResponse.BodyBuilder response,
+                                         List<Widget> widgets) {
+        List<MediaType> accepted = request.headers().accept();
+        DataBufferFactory bufferFactory = request.exchange().getResponse().bufferFactory();
+        Optional<MediaType> streamType = accepted.stream()
+                .filter(type -> type.equalsTypeAndSubtype(APPLICATION_NDJSON)
+                        || type.equalsTypeAndSubtype(MediaType.APPLICATION_STREAM_JSON))
+                .findFirst();
+        if (streamType.isPresent()) {
+            Flux<DataBuffer> lines = Flux.fromIterable(widgets)
+                    .buffer(STREAM_CHUNK_SIZE)
+                    .map(chunk -> encode(chunk, bufferFactory, WidgetJsonWriter::writeLines));
+            return response
+                    .contentType(new MediaType(streamType.get().getType(), streamType.get().getSubtype()))
+                    .body(BodyInserters.fromDataBuffers(lines));
+        }
+        if (accepted.stream().anyMatch(type -> type.equalsTypeAndSubtype(APPLICATION_SMILE))) {
+            return response.contentType(APPLICATION_SMILE).syncBody(widgets);
+        }
+        return response
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .body(BodyInserters.fromDataBuffers(
+                        Mono.fromCallable(() -> encode(widgets, bufferFactory, WidgetJsonWriter::writeList))));
+    }
+
+    private static DataBuffer encode(List<Widget> widgets, DataBufferFactory bufferFactory, Encoding encoding) {
+        DataBuffer buffer = bufferFactory.allocateBuffer();
+        boolean encoded = false;
+        try (OutputStream out = buffer.asOutputStream()) {
+            encoding.write(WidgetJsonWriter.forCurrentThread(), widgets, out);
+            encoded = true;
+            return buffer;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (!encoded) {
+                DataBufferUtils.release(buffer);
+            }
+        }
+    }
+
+    private static <T> Mono<T> write(Callable<T> operation) {
+        return Mono.fromCallable(operation).subscribeOn(Schedulers.elastic());
+    }
+
+    private static String boardOf(ServerRequest request) {
+        return request.pathVariables().get("board");
+    }
+
+    private static long idOf(ServerRequest request) {
+        return parseLong(request.pathVariable("id"), "widget id");
+    }
+
+    private static Long longParam(ServerRequest request, String name) {
+        return request.queryParam(name).map(value -> parseLong(value, name)).orElse(null);
+    }
+
+    private static long parseLong(String value, String name) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid " + name, e);
+        }
+    }
+
+    private static Integer intParam(ServerRequest request, String name) {
+        try {
+            return request.queryParam(name).map(Integer::valueOf).orElse(null);
+        } catch (NumberFormatException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid " + name, e);
+        }
+    }
+
+    private interface Encoding {
+        void write(WidgetJsonWriter writer, List<Widget> widgets, OutputStream out) throws IOException;
+    }
+}
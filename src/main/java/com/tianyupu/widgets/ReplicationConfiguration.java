@@ -0,0 +1,85 @@
+package com.tianyupu.widgets;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Primary;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+@Configuration
+public class ReplicationConfiguration {
+
+    @Bean
+    @Lazy(false)
+    @ConditionalOnProperty("widgets.replication.port")
+    public ReplicationLeader replicationLeader(
+            WidgetBoards widgetBoards,
+            MeterRegistry registry,
+            @Value("${widgets.replication.address:localhost}") String address,
+            @Value("${widgets.replication.port}") int port,
+            @Value("${widgets.replication.heartbeat-millis:100}") long heartbeatMillis
+    ) throws IOException {
+        ReplicationLeader leader = new ReplicationLeader(
+                widgetBoards, new InetSocketAddress(address, port), heartbeatMillis, registry);
+        leader.start();
+        return leader;
+    }
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty("widgets.replication.leader")
+    public ReplicationFollower replicationFollower(
+            MeterRegistry registry,
+            @Value("${widgets.replication.leader}") String leader,
+            @Value("${widgets.replication.retry-millis:1000}") long retryMillis
+    ) {
+        int separator = leader.lastIndexOf(':');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Expected widgets.replication.leader as host:port but got " + leader);
+        }
+        InetSocketAddress address = new InetSocketAddress(
+                leader.substring(0, separator), Integer.parseInt(leader.substring(separator + 1)));
+        return new ReplicationFollower(address, retryMillis, registry);
+    }
+
+    @Bean
+    @ConditionalOnProperty("widgets.replication.leader")
+    public ApplicationListener<ApplicationReadyEvent> startFollowing(
+            ReplicationFollower replicationFollower,
+            WidgetBoards widgetBoards
+    ) {
+        return event -> replicationFollower.start(widgetBoards);
+    }
+
+    @Bean
+    @ConditionalOnProperty("widgets.replication.leader")
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    public FilterRegistrationBean<FollowerRequestFilter> followerRequestFilter(
+            ReplicationFollower replicationFollower,
+            @Value("${widgets.replication.max-staleness-millis:1000}") long maxStalenessMillis
+    ) {
+        FilterRegistrationBean<FollowerRequestFilter> registration = new FilterRegistrationBean<>(
+                new FollowerRequestFilter(replicationFollower, maxStalenessMillis));
+        registration.addUrlPatterns("/widget", "/widget/*", "/widgets", "/widgets/*", "/boards/*");
+        return registration;
+    }
+
+    @Bean
+    @ConditionalOnProperty("widgets.replication.leader")
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+    public FollowerWebFilter followerWebFilter(
+            ReplicationFollower replicationFollower,
+            @Value("${widgets.replication.max-staleness-millis:1000}") long maxStalenessMillis
+    ) {
+        return new FollowerWebFilter(replicationFollower, maxStalenessMillis);
+    }
+}
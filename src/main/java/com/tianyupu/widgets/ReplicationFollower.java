@@ -0,0 +1,157 @@
+package com.tianyupu.widgets;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the boards of this instance as a read-only copy of a {@link ReplicationLeader}'s.
+ *
+ * As the store factory of the follower's {@link WidgetBoards}, it backs every board with an
+ * in-memory store, and applies the leader's snapshots and changes to them as they arrive, in
+ * order, on a single thread. Applied changes are published on the boards' own change feeds, so
+ * caches, deltas and change streams on the follower work as they do on the leader. The follower
+ * reconnects after losing the leader and then receives a fresh snapshot of every board.
+ *
+ * {@link #staleness()} is how long ago the leader sent the last heartbeat applied here; every
+ * change the leader made before then has been applied. It compares the leader's clock with this
+ * instance's, so it is only as accurate as the two clocks agree, exactly so on a single host.
+ */
+public class ReplicationFollower implements WidgetStoreFactory, Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicationFollower.class);
+
+    private final InetSocketAddress leader;
+    private final long retryMillis;
+    private final Map<String, DefaultWidgetService> stores = new ConcurrentHashMap<>();
+    private final Counter appliedChanges;
+    private final Timer lag;
+    private volatile long leaderTime;
+    private volatile boolean connected;
+    private volatile boolean closed;
+    private volatile Socket socket;
+
+    public ReplicationFollower(InetSocketAddress leader, long retryMillis, MeterRegistry registry) {
+        this.leader = leader;
+        this.retryMillis = retryMillis;
+        this.appliedChanges = Counter.builder("widgets.replication.applied")
+                .description("Changes applied from the leader")
+                .register(registry);
+        this.lag = Timer.builder("widgets.replication.lag")
+                .description("Time from the leader sending a change to the follower applying it")
+                .publishPercentileHistogram()
+                .register(registry);
+        Gauge.builder("widgets.replication.staleness", this, follower -> follower.staleness())
+                .description("Time since the leader sent the last heartbeat applied here")
+                .baseUnit("milliseconds")
+                .register(registry);
+        Gauge.builder("widgets.replication.connected", this, follower -> follower.connected ? 1 : 0)
+                .description("Whether the follower is connected to the leader")
+                .register(registry);
+    }
+
+    @Override
+    public WidgetService create(String board) {
+        DefaultWidgetService store = new DefaultWidgetService();
+        stores.put(board, store);
+        return store;
+    }
+
+    public void start(WidgetBoards boards) {
+        Thread reader = new Thread(() -> follow(boards), "replication-follower");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Returns how many milliseconds of the leader's changes this follower may be missing, or
+     * {@link Long#MAX_VALUE} before it has caught up with the leader for the first time since
+     * connecting.
+     */
+    public long staleness() {
+        long time = leaderTime;
+        return time == 0 ? Long.MAX_VALUE : Math.max(0, System.currentTimeMillis() - time);
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        Socket current = socket;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    private void follow(WidgetBoards boards) {
+        while (!closed) {
+            try (Socket current = new Socket()) {
+                socket = current;
+                current.connect(leader);
+                current.setTcpNoDelay(true);
+                current.setKeepAlive(true);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(current.getInputStream(), 1 << 16));
+                leaderTime = 0;
+                connected = true;
+                LOGGER.info("Following the leader at {}", leader);
+                while (!closed) {
+                    apply(boards, ReplicationFrame.readFrom(in));
+                }
+            } catch (IOException | RuntimeException e) {
+                if (!closed) {
+                    LOGGER.warn("Lost the leader at {}, retrying in {} ms", leader, retryMillis, e);
+                }
+            } finally {
+                connected = false;
+            }
+            sleep();
+        }
+    }
+
+    private void apply(WidgetBoards boards, ReplicationFrame frame) {
+        switch (frame.getType()) {
+            case SNAPSHOT:
+                boards.board(frame.getBoard());
+                stores.get(frame.getBoard()).replicateAll(frame.getMutations());
+                break;
+            case CHANGE:
+                boards.board(frame.getBoard());
+                for (WidgetMutation mutation : frame.getMutations()) {
+                    stores.get(frame.getBoard()).replicate(mutation);
+                }
+                appliedChanges.increment();
+                lag.record(Math.max(0, System.currentTimeMillis() - frame.getTime()), TimeUnit.MILLISECONDS);
+                break;
+            case HEARTBEAT:
+                leaderTime = Math.max(leaderTime, frame.getTime());
+                break;
+        }
+    }
+
+    private void sleep() {
+        if (closed) {
+            return;
+        }
+        try {
+            Thread.sleep(retryMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.tianyupu.widgets;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A message on a replication connection: the widgets of a board, one change to a board, or a
+ * heartbeat. Frames are length-prefixed, carry the leader's change sequence and wall-clock time,
+ * and encode widgets as {@link WidgetMutation}s, the same records the write-ahead log uses.
+ *
+ * A heartbeat's time promises that every change the leader made before it has already been
+ * sent, so a follower that has applied it is at most that far behind.
+ */
+public class ReplicationFrame {
+    public enum Type {
+        SNAPSHOT,
+        CHANGE,
+        HEARTBEAT
+    }
+
+    private static final int HEADER_SIZE = 1 + 2 + 8 + 8 + 4;
+
+    private final Type type;
+    private final String board;
+    private final long sequence;
+    private final long time;
+    private final List<WidgetMutation> mutations;
+
+    private ReplicationFrame(Type type, String board, long sequence, long time, List<WidgetMutation> mutations) {
+        this.type = type;
+        this.board = board;
+        this.sequence = sequence;
+        this.time = time;
+        this.mutations = mutations;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getBoard() {
+        return board;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public List<WidgetMutation> getMutations() {
+        return mutations;
+    }
+
+    static byte[] snapshot(String board, long sequence, long time, List<Widget> widgets) {
+        List<WidgetMutation> mutations = new ArrayList<>(widgets.size());
+        for (Widget widget : widgets) {
+            mutations.add(WidgetMutation.created(widget, widget.getZIndex()));
+        }
+        return encode(Type.SNAPSHOT, board, sequence, time, mutations);
+    }
+
+    static byte[] change(String board, long sequence, long time, WidgetMutation mutation) {
+        return encode(Type.CHANGE, board, sequence, time, Collections.singletonList(mutation));
+    }
+
+    static byte[] heartbeat(long time) {
+        return encode(Type.HEARTBEAT, "", 0, time, Collections.emptyList());
+    }
+
+    static ReplicationFrame readFrom(DataInputStream in) throws IOException {
+        byte[] frame = new byte[in.readInt()];
+        in.readFully(frame);
+        ByteBuffer buffer = ByteBuffer.wrap(frame);
+        Type type = Type.values()[buffer.get()];
+        byte[] board = new byte[buffer.getShort()];
+        buffer.get(board);
+        long sequence = buffer.getLong();
+        long time = buffer.getLong();
+        int count = buffer.getInt();
+        List<WidgetMutation> mutations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            mutations.add(WidgetMutation.readFrom(buffer));
+        }
+        return new ReplicationFrame(type, new String(board, StandardCharsets.US_ASCII), sequence, time, mutations);
+    }
+
+    private static byte[] encode(Type type, String board, long sequence, long time, List<WidgetMutation> mutations) {
+        byte[] name = board.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buffer = ByteBuffer.allocate(
+                4 + HEADER_SIZE + name.length + mutations.size() * WidgetMutation.MAX_ENCODED_SIZE);
+        buffer.putInt(0);
+        buffer.put((byte) type.ordinal());
+        buffer.putShort((short) name.length);
+        buffer.put(name);
+        buffer.putLong(sequence);
+        buffer.putLong(time);
+        buffer.putInt(mutations.size());
+        for (WidgetMutation mutation : mutations) {
+            mutation.writeTo(buffer);
+        }
+        buffer.putInt(0, buffer.position() - 4);
+        byte[] frame = new byte[buffer.position()];
+        System.arraycopy(buffer.array(), 0, frame, 0, frame.length);
+        return frame;
+    }
+}
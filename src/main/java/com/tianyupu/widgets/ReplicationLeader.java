@@ -0,0 +1,285 @@
+package com.tianyupu.widgets;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams every board to the followers connected to a TCP port.
+ *
+ * A follower first receives a snapshot of each board and then each change from the board's
+ * {@link WidgetChangeFeed} in order. Creations carry the z-index they were made at and updates
+ * the one they moved onto, so a follower that applies them in order shifts the same widgets the
+ * leader did; the feed's own {@code SHIFTED} changes are not sent. Each follower has its own
+ * bounded queue and writer thread. When a follower falls so far behind that the feed has dropped
+ * changes it has not been sent, it is sent a new snapshot of that board instead. Heartbeats are
+ * queued behind the changes they cover, so that followers can tell how far behind they are.
+ */
+public class ReplicationLeader implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicationLeader.class);
+    private static final int QUEUED_FRAMES = 4096;
+
+    private final WidgetBoards boards;
+    private final ServerSocket serverSocket;
+    private final Map<String, WidgetService> knownBoards = new ConcurrentHashMap<>();
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "replication-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Counter sentChanges;
+    private final Counter sentSnapshots;
+    private volatile boolean closed;
+
+    public ReplicationLeader(WidgetBoards boards, InetSocketAddress address, long heartbeatMillis, MeterRegistry registry)
+            throws IOException {
+        this.boards = boards;
+        this.serverSocket = new ServerSocket();
+        serverSocket.bind(address);
+        this.sentChanges = Counter.builder("widgets.replication.sent")
+                .description("Changes sent to followers")
+                .register(registry);
+        this.sentSnapshots = Counter.builder("widgets.replication.snapshots")
+                .description("Board snapshots sent to followers")
+                .register(registry);
+        Gauge.builder("widgets.replication.followers", connections, Set::size)
+                .description("Connected followers")
+                .register(registry);
+        heartbeats.scheduleAtFixedRate(
+                () -> connections.forEach(Connection::heartbeat), heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    public void start() {
+        boards.onBoardCreated(this::boardCreated);
+        Thread acceptor = new Thread(this::accept, "replication-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        heartbeats.shutdownNow();
+        serverSocket.close();
+        connections.forEach(Connection::close);
+    }
+
+    private synchronized void boardCreated(String name, WidgetService board) {
+        knownBoards.put(name, board);
+        long now = System.currentTimeMillis();
+        connections.forEach(connection -> connection.follow(name, board, now));
+    }
+
+    private synchronized void connected(Connection connection) {
+        connections.add(connection);
+        knownBoards.forEach((name, board) -> connection.follow(name, board, 0));
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                socket.setKeepAlive(true);
+                Connection connection = new Connection(socket);
+                connected(connection);
+                LOGGER.info("Follower {} connected", socket.getRemoteSocketAddress());
+            } catch (IOException e) {
+                if (!closed) {
+                    LOGGER.warn("Could not accept a follower", e);
+                }
+            }
+        }
+    }
+
+    private final class Connection {
+        private final Socket socket;
+        private final OutputStream out;
+        private final BlockingQueue<byte[]> frames = new ArrayBlockingQueue<>(QUEUED_FRAMES);
+        private final Map<String, BoardStream> streams = new ConcurrentHashMap<>();
+        private final Thread writer;
+        private volatile boolean closed;
+
+        private Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = new BufferedOutputStream(socket.getOutputStream(), 1 << 16);
+            this.writer = new Thread(this::write, "replication-writer-" + socket.getPort());
+            writer.setDaemon(true);
+            writer.start();
+        }
+
+        /**
+         * Starts streaming a board that had no changes unsent before {@code caughtUpAt}: the time
+         * it was created, or 0 for a board that already existed when the follower connected.
+         */
+        private void follow(String name, WidgetService board, long caughtUpAt) {
+            BoardStream stream = new BoardStream(this, name, board, caughtUpAt);
+            if (streams.putIfAbsent(name, stream) == null) {
+                Schedulers.elastic().schedule(stream::start);
+            }
+        }
+
+        private void heartbeat() {
+            long time = Long.MAX_VALUE;
+            for (BoardStream stream : streams.values()) {
+                time = Math.min(time, stream.caughtUpAt());
+            }
+            if (time != Long.MAX_VALUE) {
+                frames.offer(ReplicationFrame.heartbeat(time));
+            }
+        }
+
+        /**
+         * Queues a frame, waiting while the queue is full. Returns false once the connection has
+         * been closed.
+         */
+        private boolean send(byte[] frame) {
+            try {
+                while (!closed) {
+                    if (frames.offer(frame, 100, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+
+        private void write() {
+            try {
+                while (!closed) {
+                    byte[] frame = frames.take();
+                    do {
+                        out.write(frame);
+                        frame = frames.poll();
+                    } while (frame != null);
+                    out.flush();
+                }
+            } catch (IOException | InterruptedException e) {
+                if (!closed) {
+                    LOGGER.info("Follower {} disconnected", socket.getRemoteSocketAddress());
+                }
+            } finally {
+                close();
+            }
+        }
+
+        private void close() {
+            closed = true;
+            connections.remove(this);
+            streams.values().forEach(BoardStream::stop);
+            writer.interrupt();
+            try {
+                socket.close();
+            } catch (IOException e) {
+                LOGGER.debug("Could not close the connection to a follower", e);
+            }
+        }
+    }
+
+    private final class BoardStream {
+        private final Connection connection;
+        private final String name;
+        private final WidgetService board;
+        private volatile Disposable subscription;
+        private volatile long sent;
+        private volatile long caughtUpAt;
+
+        private BoardStream(Connection connection, String name, WidgetService board, long caughtUpAt) {
+            this.connection = connection;
+            this.name = name;
+            this.board = board;
+            this.caughtUpAt = caughtUpAt;
+        }
+
+        private void start() {
+            if (connection.closed) {
+                return;
+            }
+            long time = System.currentTimeMillis();
+            WidgetDelta snapshot = board.getWidgetsChangedSince(Long.MAX_VALUE);
+            if (!connection.send(ReplicationFrame.snapshot(name, snapshot.getSequence(), time, snapshot.getWidgets()))) {
+                return;
+            }
+            sentSnapshots.increment();
+            sent = snapshot.getSequence();
+            caughtUpAt = time;
+            subscription = board.getChangeFeed().subscribe(snapshot.getSequence()).subscribe(
+                    this::send,
+                    error -> connection.close(),
+                    this::start);
+            if (connection.closed) {
+                stop();
+            }
+        }
+
+        private void send(WidgetChange change) {
+            WidgetMutation mutation;
+            switch (change.getType()) {
+                case CREATED:
+                    mutation = WidgetMutation.created(change.getWidget(), change.getWidget().getZIndex());
+                    break;
+                case UPDATED:
+                    mutation = WidgetMutation.updated(change.getWidget());
+                    break;
+                case DELETED:
+                    mutation = WidgetMutation.deleted(change.getWidget());
+                    break;
+                case SHIFTED:
+                    sent = change.getSequence();
+                    return;
+                default:
+                    return;
+            }
+            long time = System.currentTimeMillis();
+            if (connection.send(ReplicationFrame.change(name, change.getSequence(), time, mutation))) {
+                sentChanges.increment();
+                sent = change.getSequence();
+            }
+        }
+
+        /**
+         * Returns the latest time at which every change to the board had been queued.
+         */
+        private long caughtUpAt() {
+            long now = System.currentTimeMillis();
+            if (sent >= board.getChangeFeed().lastSequence()) {
+                caughtUpAt = now;
+            }
+            return caughtUpAt;
+        }
+
+        private void stop() {
+            Disposable current = subscription;
+            if (current != null) {
+                current.dispose();
+            }
+        }
+    }
+}
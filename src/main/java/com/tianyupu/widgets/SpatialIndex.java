@@ -0,0 +1,226 @@
+package com.tianyupu.widgets;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Buckets widgets into grids by the cell holding their origin corner.
+ *
+ * A widget that lies fully inside a rectangle has its origin inside that rectangle, so an area
+ * query only has to look at the cells the rectangle overlaps, and its cost depends on the size
+ * of the area and the widgets around it rather than on the total number of widgets.
+ *
+ * Widgets are kept on levels whose cells double in size, each widget on the first level whose
+ * cells are at least as wide and as high as the widget. A widget covering a point then has its
+ * origin in one of the two columns and rows of cells up to and including the point's, so a point
+ * query looks at no more than four cells on each occupied level.
+ */
+public class SpatialIndex {
+    static final int DEFAULT_CELL_SIZE = 256;
+    static final int LEVELS = 32;
+    private static final long CELL_MASK = (1L << 29) - 1;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final int cellSize;
+    private final Map<Long, Map<Long, Placement>> cells = new HashMap<>();
+    private final Map<Long, Placement> placements = new HashMap<>();
+    private final int[] widgetsOnLevel = new int[LEVELS];
+
+    public SpatialIndex() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    public SpatialIndex(int cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("Cell size must be positive");
+        }
+        this.cellSize = cellSize;
+    }
+
+    public void add(Widget widget) {
+        lock.writeLock().lock();
+        try {
+            place(widget);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void update(Widget widget) {
+        lock.writeLock().lock();
+        try {
+            unplace(widget.getId());
+            place(widget);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Widget widget) {
+        lock.writeLock().lock();
+        try {
+            unplace(widget.getId());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<Widget> findWithin(int x1, int y1, int x2, int y2) {
+        lock.readLock().lock();
+        try {
+            List<Widget> found = new ArrayList<>();
+            long cellsToVisit = 0;
+            for (int level = 0; level < LEVELS && cellsToVisit <= cells.size(); level++) {
+                if (widgetsOnLevel[level] > 0) {
+                    cellsToVisit += (cellOf(x2, level) - cellOf(x1, level) + 1)
+                            * (cellOf(y2, level) - cellOf(y1, level) + 1);
+                }
+            }
+
+            if (cellsToVisit > cells.size()) {
+                for (Map<Long, Placement> cell : cells.values()) {
+                    collectWithin(cell, x1, y1, x2, y2, found);
+                }
+                return found;
+            }
+
+            for (int level = 0; level < LEVELS; level++) {
+                if (widgetsOnLevel[level] == 0) {
+                    continue;
+                }
+                for (long column = cellOf(x1, level); column <= cellOf(x2, level); column++) {
+                    for (long row = cellOf(y1, level); row <= cellOf(y2, level); row++) {
+                        Map<Long, Placement> cell = cells.get(cellKey(level, column, row));
+                        if (cell != null) {
+                            collectWithin(cell, x1, y1, x2, y2, found);
+                        }
+                    }
+                }
+            }
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the widgets whose area contains the point, counting their left and top edges but
+     * not their right and bottom ones, in no particular order.
+     */
+    public List<Widget> findAt(int x, int y) {
+        lock.readLock().lock();
+        try {
+            List<Widget> found = new ArrayList<>();
+            for (int level = 0; level < LEVELS; level++) {
+                if (widgetsOnLevel[level] == 0) {
+                    continue;
+                }
+                long size = (long) cellSize << level;
+                for (long column = cellOf(x - size + 1, level); column <= cellOf(x, level); column++) {
+                    for (long row = cellOf(y - size + 1, level); row <= cellOf(y, level); row++) {
+                        Map<Long, Placement> cell = cells.get(cellKey(level, column, row));
+                        if (cell != null) {
+                            collectAt(cell, x, y, found);
+                        }
+                    }
+                }
+            }
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void place(Widget widget) {
+        Placement placement = new Placement(widget, levelOf(widget.getWidth(), widget.getHeight(), cellSize));
+        placements.put(widget.getId(), placement);
+        cells.computeIfAbsent(keyOf(placement), k -> new HashMap<>()).put(widget.getId(), placement);
+        widgetsOnLevel[placement.level]++;
+    }
+
+    private void unplace(long id) {
+        Placement placement = placements.remove(id);
+        if (placement == null) {
+            return;
+        }
+        long key = keyOf(placement);
+        Map<Long, Placement> cell = cells.get(key);
+        cell.remove(id);
+        if (cell.isEmpty()) {
+            cells.remove(key);
+        }
+        widgetsOnLevel[placement.level]--;
+    }
+
+    private void collectWithin(Map<Long, Placement> cell, int x1, int y1, int x2, int y2, List<Widget> found) {
+        for (Placement placement : cell.values()) {
+            if (placement.x >= x1
+                    && placement.y >= y1
+                    && (long) placement.x + placement.width <= x2
+                    && (long) placement.y + placement.height <= y2) {
+                found.add(placement.widget);
+            }
+        }
+    }
+
+    private void collectAt(Map<Long, Placement> cell, int x, int y, List<Widget> found) {
+        for (Placement placement : cell.values()) {
+            if (placement.x <= x
+                    && placement.y <= y
+                    && x < (long) placement.x + placement.width
+                    && y < (long) placement.y + placement.height) {
+                found.add(placement.widget);
+            }
+        }
+    }
+
+    private long keyOf(Placement placement) {
+        return cellKey(placement.level, cellOf(placement.x, placement.level), cellOf(placement.y, placement.level));
+    }
+
+    private long cellOf(long coordinate, int level) {
+        return Math.floorDiv(coordinate, (long) cellSize << level);
+    }
+
+    /**
+     * Returns the first level whose cells, {@code cellSize} wide on level 0 and twice as wide on
+     * each level above, are at least as wide and as high as the widget.
+     */
+    static int levelOf(int width, int height, int cellSize) {
+        int level = 0;
+        while (((long) cellSize << level) < Math.max(width, height)) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Packs a level and cell into one key. Cells too far apart to fit the key share it, which
+     * only costs those cells some filtering.
+     */
+    static long cellKey(int level, long column, long row) {
+        return ((long) level << 58) | ((column & CELL_MASK) << 29) | (row & CELL_MASK);
+    }
+
+    private static final class Placement {
+        private final Widget widget;
+        private final int x;
+        private final int y;
+        private final int width;
+        private final int height;
+        private final int level;
+
+        private Placement(Widget widget, int level) {
+            this.widget = widget;
+            this.level = level;
+            this.x = widget.getX();
+            this.y = widget.getY();
+            this.width = widget.getWidth();
+            this.height = widget.getHeight();
+        }
+    }
+}
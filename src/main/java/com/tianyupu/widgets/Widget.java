@@ -1,85 +1,76 @@
 package com.tianyupu.widgets;
 
-import java.time.Instant;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
 import java.util.Date;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
 
+@JsonSerialize(using = Widget.Serializer.class)
 public class Widget {
-    private final AtomicInteger x;
-    private final AtomicInteger y;
-    private final AtomicInteger width;
-    private final AtomicInteger height;
-    private final AtomicInteger zIndex;
-    private final AtomicReference<Date> lastModified;
+    private final ZOrderIndex.Entry<Widget> zOrderEntry;
     private final long id;
+    private volatile State state;
+    private long changeSequence;
 
     public Widget(int x, int y, int width, int height, int zIndex, long id) {
-        this.x = new AtomicInteger(x);
-        this.y = new AtomicInteger(y);
-        this.width = new AtomicInteger(width);
-        this.height = new AtomicInteger(height);
-        this.zIndex = new AtomicInteger(zIndex);
-        this.lastModified = new AtomicReference<>(Date.from(Instant.now()));
-        this.id = id;
+        this(x, y, width, height, zIndex, id, 1, new Date());
     }
 
-    public int getX() {
-        return x.get();
+    Widget(int x, int y, int width, int height, int zIndex, long id, long version, Date lastModified) {
+        this.zOrderEntry = new ZOrderIndex.Entry<>(this, zIndex);
+        this.id = id;
+        this.state = new State(x, y, width, height, lastModified, version);
     }
 
-    public void setX(int x) {
-        if (this.x.compareAndSet(getX(), x)) {
-            updateLastModifiedTime();
-        }
+    public int getX() {
+        return state.x;
     }
 
     public int getY() {
-        return y.get();
-    }
-
-    public void setY(int y) {
-        if (this.y.compareAndSet(getY(), y)) {
-            updateLastModifiedTime();
-        }
+        return state.y;
     }
 
     public int getWidth() {
-        return width.get();
+        return state.width;
     }
 
-    public void setWidth(int width) {
-        if (this.width.compareAndSet(getWidth(), width)) {
-            updateLastModifiedTime();
-        }
+    public int getHeight() {
+        return state.height;
     }
 
-    public int getHeight() {
-        return height.get();
+    public int getZIndex() {
+        return zOrderEntry.getZIndex();
     }
 
-    public void setHeight(int height) {
-        if (this.height.compareAndSet(getHeight(), height)) {
-            updateLastModifiedTime();
-        }
+    public Date getLastModified() {
+        return state.lastModified;
     }
 
-    public int getZIndex() {
-        return zIndex.get();
+    public long getId() {
+        return id;
     }
 
-    public void setZIndex(int zIndex) {
-        if (this.zIndex.compareAndSet(getZIndex(), zIndex)) {
-            updateLastModifiedTime();
-        }
+    public long getVersion() {
+        return state.version;
     }
 
-    public Date getLastModified() {
-        return lastModified.get();
+    public synchronized boolean update(int x, int y, int width, int height, int zIndex) {
+        boolean moved = zOrderEntry.getZIndex() != zIndex;
+        zOrderEntry.moveOnto(zIndex);
+        State current = state;
+        if (!moved && current.hasGeometry(x, y, width, height)) {
+            return false;
+        }
+        state = new State(x, y, width, height, new Date(), current.version + 1);
+        return true;
     }
 
-    public long getId() {
-        return id;
+    synchronized void restore(int x, int y, int width, int height, int zIndex, long version, Date lastModified) {
+        zOrderEntry.moveOnto(zIndex);
+        state = new State(x, y, width, height, lastModified, version);
     }
 
     @Override
@@ -90,40 +81,121 @@ public class Widget {
         Widget widget = (Widget) o;
 
         if (id != widget.id) return false;
-        if (x != null ? !x.equals(widget.x) : widget.x != null) return false;
-        if (y != null ? !y.equals(widget.y) : widget.y != null) return false;
-        if (width != null ? !width.equals(widget.width) : widget.width != null) return false;
-        if (height != null ? !height.equals(widget.height) : widget.height != null) return false;
-        if (zIndex != null ? !zIndex.equals(widget.zIndex) : widget.zIndex != null) return false;
-        return lastModified != null ? lastModified.equals(widget.lastModified) : widget.lastModified == null;
+        return state.equals(widget.state);
     }
 
     @Override
     public int hashCode() {
-        int result = x != null ? x.hashCode() : 0;
-        result = 31 * result + (y != null ? y.hashCode() : 0);
-        result = 31 * result + (width != null ? width.hashCode() : 0);
-        result = 31 * result + (height != null ? height.hashCode() : 0);
-        result = 31 * result + (zIndex != null ? zIndex.hashCode() : 0);
-        result = 31 * result + (lastModified != null ? lastModified.hashCode() : 0);
-        result = 31 * result + (int) (id ^ (id >>> 32));
-        return result;
+        return (int) (id ^ (id >>> 32));
     }
 
     @Override
     public String toString() {
+        State current = state;
         return "Widget{" +
-                "x=" + x +
-                ", y=" + y +
-                ", width=" + width +
-                ", height=" + height +
-                ", zIndex=" + zIndex +
-                ", lastModified=" + lastModified +
+                "x=" + current.x +
+                ", y=" + current.y +
+                ", width=" + current.width +
+                ", height=" + current.height +
+                ", zIndex=" + getZIndex() +
+                ", lastModified=" + current.lastModified +
+                ", version=" + current.version +
                 ", id=" + id +
                 '}';
     }
 
-    private void updateLastModifiedTime() {
-        lastModified.compareAndSet(getLastModified(), Date.from(Instant.now()));
+    synchronized Widget copy() {
+        return copyAt(getZIndex());
+    }
+
+    Widget copyAt(int zIndex) {
+        State current = state;
+        return new Widget(current.x, current.y, current.width, current.height, zIndex, id,
+                current.version, current.lastModified);
+    }
+
+    void writeJson(WidgetJsonWriter writer) throws IOException {
+        State current = state;
+        writer.writeWidget(current.x, current.y, current.width, current.height, getZIndex(),
+                current.lastModified.getTime(), current.version, id);
+    }
+
+    long changeSequence() {
+        return changeSequence;
+    }
+
+    void changeSequence(long changeSequence) {
+        this.changeSequence = changeSequence;
+    }
+
+    ZOrderIndex.Entry<Widget> zOrderEntry() {
+        return zOrderEntry;
+    }
+
+    private static final class State {
+        private final int x;
+        private final int y;
+        private final int width;
+        private final int height;
+        private final Date lastModified;
+        private final long version;
+
+        private State(int x, int y, int width, int height, Date lastModified, long version) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.lastModified = lastModified;
+            this.version = version;
+        }
+
+        private boolean hasGeometry(int x, int y, int width, int height) {
+            return this.x == x && this.y == y && this.width == width && this.height == height;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            State state = (State) o;
+
+            return hasGeometry(state.x, state.y, state.width, state.height)
+                    && lastModified.equals(state.lastModified)
+                    && version == state.version;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = x;
+            result = 31 * result + y;
+            result = 31 * result + width;
+            result = 31 * result + height;
+            result = 31 * result + lastModified.hashCode();
+            result = 31 * result + (int) (version ^ (version >>> 32));
+            return result;
+        }
+    }
+
+    static class Serializer extends StdSerializer<Widget> {
+        Serializer() {
+            super(Widget.class);
+        }
+
+        @Override
+        public void serialize(Widget widget, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            State current = widget.state;
+            generator.writeStartObject();
+            generator.writeNumberField("x", current.x);
+            generator.writeNumberField("y", current.y);
+            generator.writeNumberField("width", current.width);
+            generator.writeNumberField("height", current.height);
+            generator.writeNumberField("zindex", widget.getZIndex());
+            generator.writeFieldName("lastModified");
+            provider.defaultSerializeDateValue(current.lastModified, generator);
+            generator.writeNumberField("version", current.version);
+            generator.writeNumberField("id", widget.id);
+            generator.writeEndObject();
+        }
     }
 }
@@ -0,0 +1,46 @@
+package com.tianyupu.widgets;
+
+public class WidgetBatchOperation {
+    public enum Type {
+        CREATE,
+        UPDATE,
+        DELETE
+    }
+
+    private Type type;
+    private Long id;
+    private Long version;
+    private WidgetRequest widget;
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    public WidgetRequest getWidget() {
+        return widget;
+    }
+
+    public void setWidget(WidgetRequest widget) {
+        this.widget = widget;
+    }
+}
@@ -0,0 +1,27 @@
+package com.tianyupu.widgets;
+
+public class WidgetBatchResult {
+    public enum Outcome {
+        CREATED,
+        UPDATED,
+        DELETED,
+        NOT_FOUND,
+        CONFLICT
+    }
+
+    private final Outcome outcome;
+    private final Widget widget;
+
+    public WidgetBatchResult(Outcome outcome, Widget widget) {
+        this.outcome = outcome;
+        this.widget = widget;
+    }
+
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    public Widget getWidget() {
+        return widget;
+    }
+}
@@ -0,0 +1,50 @@
+package com.tianyupu.widgets;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+
+import java.nio.file.Paths;
+
+@Configuration
+public class WidgetBoardConfiguration {
+
+    @Bean
+    @ConditionalOnProperty(name = "widgets.store", havingValue = "memory", matchIfMissing = true)
+    public WidgetStoreFactory memoryWidgetStores() {
+        return board -> new DefaultWidgetService();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "widgets.store", havingValue = "columnar")
+    public WidgetStoreFactory columnarWidgetStores() {
+        return board -> new ColumnarWidgetService();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "widgets.store", havingValue = "durable")
+    public WidgetStoreFactory durableWidgetStores(
+            @Value("${widgets.durable.directory:data}") String directory,
+            @Value("${widgets.durable.segment-size:67108864}") int segmentSize,
+            @Value("${widgets.durable.snapshot-interval:100000}") long snapshotInterval
+    ) {
+        return new DurableWidgetStoreFactory(Paths.get(directory), segmentSize, snapshotInterval);
+    }
+
+    @Bean
+    @Lazy(false)
+    public WidgetBoards widgetBoards(
+            WidgetStoreFactory storeFactory,
+            MeterRegistry registry,
+            @Value("${widgets.boards.max-boards:256}") int maxBoards
+    ) {
+        return new WidgetBoards(
+                board -> new MeteredWidgetService(storeFactory.create(board), registry, board),
+                storeFactory.existingBoards(),
+                maxBoards
+        );
+    }
+}
@@ -0,0 +1,11 @@
+package com.tianyupu.widgets;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.INSUFFICIENT_STORAGE)
+public class WidgetBoardLimitException extends RuntimeException {
+    public WidgetBoardLimitException(String board, int maxBoards) {
+        super("Cannot create board " + board + ", the limit of " + maxBoards + " boards has been reached");
+    }
+}
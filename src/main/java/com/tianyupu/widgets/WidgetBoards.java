@@ -0,0 +1,100 @@
+package com.tianyupu.widgets;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * The boards of the service. Each board is an independent {@link WidgetService} with its own ids,
+ * z-order, change feed and write lock, so a write to one board never waits for, or shifts widgets
+ * on, another.
+ *
+ * Boards are created on their first write and kept until shutdown. The {@value #DEFAULT_BOARD}
+ * board always exists and backs the endpoints that do not name a board. Looking up an existing
+ * board is a single map read; creating one is serialized with other creations and listener
+ * registrations, so every listener sees every board exactly once, before it is used.
+ */
+public class WidgetBoards implements Closeable {
+    public static final String DEFAULT_BOARD = "default";
+    private static final Pattern BOARD_NAME = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    private final Function<String, WidgetService> boardFactory;
+    private final int maxBoards;
+    private final ConcurrentHashMap<String, WidgetService> boards = new ConcurrentHashMap<>();
+    private final List<BiConsumer<String, WidgetService>> listeners = new ArrayList<>();
+
+    public WidgetBoards(Function<String, WidgetService> boardFactory, Collection<String> existingBoards, int maxBoards) {
+        this.boardFactory = boardFactory;
+        this.maxBoards = maxBoards;
+        board(DEFAULT_BOARD);
+        existingBoards.forEach(this::board);
+    }
+
+    public static boolean isValidName(String name) {
+        return name != null && BOARD_NAME.matcher(name).matches();
+    }
+
+    /**
+     * Returns the named board, creating it if it does not exist yet.
+     */
+    public WidgetService board(String name) {
+        WidgetService board = boards.get(name);
+        return board != null ? board : create(name);
+    }
+
+    /**
+     * Returns the named board, or null if it has not been created.
+     */
+    public WidgetService find(String name) {
+        return isValidName(name) ? boards.get(name) : null;
+    }
+
+    public Set<String> names() {
+        return Collections.unmodifiableSet(boards.keySet());
+    }
+
+    /**
+     * Calls the listener for every existing board now and for every new board as it is created.
+     */
+    public synchronized void onBoardCreated(BiConsumer<String, WidgetService> listener) {
+        listeners.add(listener);
+        boards.forEach(listener);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (WidgetService board : boards.values()) {
+            if (board instanceof Closeable) {
+                ((Closeable) board).close();
+            }
+        }
+    }
+
+    private synchronized WidgetService create(String name) {
+        WidgetService board = boards.get(name);
+        if (board != null) {
+            return board;
+        }
+        if (!isValidName(name)) {
+            throw new IllegalArgumentException("Invalid board name " + name);
+        }
+        if (boards.size() >= maxBoards) {
+            throw new WidgetBoardLimitException(name, maxBoards);
+        }
+
+        board = boardFactory.apply(name);
+        for (BiConsumer<String, WidgetService> listener : listeners) {
+            listener.accept(name, board);
+        }
+        boards.put(name, board);
+        return board;
+    }
+}
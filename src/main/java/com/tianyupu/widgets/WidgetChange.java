@@ -0,0 +1,42 @@
+package com.tianyupu.widgets;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class WidgetChange {
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED,
+        SHIFTED,
+        RESET
+    }
+
+    private final long sequence;
+    private final Type type;
+    private final Widget widget;
+    private final Integer fromZIndex;
+
+    WidgetChange(long sequence, Type type, Widget widget, Integer fromZIndex) {
+        this.sequence = sequence;
+        this.type = type;
+        this.widget = widget;
+        this.fromZIndex = fromZIndex;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Widget getWidget() {
+        return widget;
+    }
+
+    public Integer getFromZIndex() {
+        return fromZIndex;
+    }
+}
@@ -0,0 +1,148 @@
+package com.tianyupu.widgets;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Numbers every change to a widget store and keeps the most recent ones in a fixed-size ring.
+ *
+ * A creation that pushes existing widgets up is preceded by a single {@code SHIFTED} change
+ * meaning "every widget at or above {@code fromZIndex} moved up by one", so replaying the changes
+ * in order reproduces the z-order without an event per shifted widget.
+ *
+ * Appending never waits for subscribers. Each subscriber drains the ring at its own pace on a
+ * separate scheduler; one that falls so far behind that its next change has been overwritten, or
+ * asks to resume from a sequence the feed has not reached, gets a {@code RESET} change and is
+ * completed, and has to reload the board before subscribing again. Listeners registered with
+ * {@link #onChange(Consumer)} are instead called synchronously as each change is appended, before
+ * the write that made it returns.
+ */
+public class WidgetChangeFeed {
+    static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private final AtomicReferenceArray<WidgetChange> ring;
+    private final int mask;
+    private final Scheduler scheduler;
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private volatile long lastSequence;
+    private volatile Consumer<WidgetChange> changeListener = change -> { };
+
+    public WidgetChangeFeed(int capacity) {
+        this(capacity, 0);
+    }
+
+    public WidgetChangeFeed(int capacity, long firstSequence) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a positive power of two");
+        }
+        this.ring = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+        this.scheduler = Schedulers.elastic();
+        this.lastSequence = firstSequence;
+    }
+
+    public long lastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Adds a listener that is called with each change as it is appended, alongside any added
+     * before it.
+     */
+    public synchronized void onChange(Consumer<WidgetChange> listener) {
+        changeListener = changeListener.andThen(listener);
+    }
+
+    public Flux<WidgetChange> subscribe(Long afterSequence) {
+        return Flux.create(sink -> {
+            Subscription subscription = new Subscription(sink);
+            subscription.next = afterSequence != null ? afterSequence + 1 : lastSequence + 1;
+            subscriptions.add(subscription);
+            sink.onRequest(requested -> subscription.signal());
+            sink.onDispose(() -> subscriptions.remove(subscription));
+        });
+    }
+
+    long created(Widget widget) {
+        return append(WidgetChange.Type.CREATED, widget.copy(), null);
+    }
+
+    long updated(Widget widget) {
+        return append(WidgetChange.Type.UPDATED, widget.copy(), null);
+    }
+
+    long deleted(Widget widget) {
+        return append(WidgetChange.Type.DELETED, widget.copy(), null);
+    }
+
+    long shifted(int fromZIndex) {
+        return append(WidgetChange.Type.SHIFTED, null, fromZIndex);
+    }
+
+    private synchronized long append(WidgetChange.Type type, Widget widget, Integer fromZIndex) {
+        long sequence = lastSequence + 1;
+        WidgetChange change = new WidgetChange(sequence, type, widget, fromZIndex);
+        ring.set((int) sequence & mask, change);
+        lastSequence = sequence;
+        changeListener.accept(change);
+        for (Subscription subscription : subscriptions) {
+            subscription.signal();
+        }
+        return sequence;
+    }
+
+    private WidgetChange get(long sequence) {
+        WidgetChange change = ring.get((int) sequence & mask);
+        return change != null && change.getSequence() == sequence ? change : null;
+    }
+
+    private final class Subscription {
+        private final FluxSink<WidgetChange> sink;
+        private final AtomicInteger pending = new AtomicInteger();
+        private long next;
+
+        private Subscription(FluxSink<WidgetChange> sink) {
+            this.sink = sink;
+        }
+
+        private void signal() {
+            if (pending.getAndIncrement() == 0) {
+                scheduler.schedule(this::drain);
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                long last = lastSequence;
+                if (next > last + 1) {
+                    reset(last);
+                    return;
+                }
+                while (next <= last && sink.requestedFromDownstream() > 0 && !sink.isCancelled()) {
+                    WidgetChange change = get(next);
+                    if (change == null) {
+                        reset(lastSequence);
+                        return;
+                    }
+                    sink.next(change);
+                    next++;
+                }
+                missed = pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void reset(long sequence) {
+            sink.next(new WidgetChange(sequence, WidgetChange.Type.RESET, null, null));
+            sink.complete();
+        }
+    }
+}
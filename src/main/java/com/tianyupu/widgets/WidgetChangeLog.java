@@ -0,0 +1,97 @@
+package com.tianyupu.widgets;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Indexes a widget store by change sequence so that the changes after a given sequence can be
+ * listed in time proportional to their number.
+ *
+ * Every live widget is kept under the sequence of its latest change. Deletions and z-index shifts
+ * are kept as tombstones and shift records, of which only the most recent {@code retention} are
+ * retained; a delta from before the oldest of them, or from before the log was started, reports a
+ * reset instead. Stores that track the latest change of each widget themselves only record
+ * deletions and shifts here and pass their changed widgets to {@link #since(long, long, List)}.
+ * Deltas hold copies of the changed widgets, so later shifts do not leak into an earlier delta.
+ * Callers serialize access.
+ */
+public class WidgetChangeLog {
+    static final int DEFAULT_RETENTION = 1 << 16;
+
+    private final TreeMap<Long, Widget> changed = new TreeMap<>();
+    private final TreeMap<Long, Long> deleted = new TreeMap<>();
+    private final TreeMap<Long, Integer> shifted = new TreeMap<>();
+    private final int retention;
+    private long horizon;
+
+    public WidgetChangeLog(long firstSequence) {
+        this(DEFAULT_RETENTION, firstSequence);
+    }
+
+    public WidgetChangeLog(int retention, long firstSequence) {
+        this.retention = retention;
+        this.horizon = firstSequence;
+    }
+
+    void changed(Widget widget, long sequence) {
+        changed.remove(widget.changeSequence());
+        widget.changeSequence(sequence);
+        changed.put(sequence, widget);
+    }
+
+    void deleted(Widget widget, long sequence) {
+        changed.remove(widget.changeSequence());
+        deleted(widget.getId(), sequence);
+    }
+
+    void deleted(long id, long sequence) {
+        deleted.put(sequence, id);
+        trim();
+    }
+
+    void shifted(int fromZIndex, long sequence) {
+        shifted.put(sequence, fromZIndex);
+        trim();
+    }
+
+    boolean covers(long sequence) {
+        return sequence >= horizon;
+    }
+
+    WidgetDelta since(long sequence, long lastSequence) {
+        Collection<Widget> changedSince = changed.tailMap(sequence, false).values();
+        List<Widget> changedWidgets = new ArrayList<>(changedSince.size());
+        for (Widget widget : changedSince) {
+            changedWidgets.add(widget.copy());
+        }
+        return since(sequence, lastSequence, changedWidgets);
+    }
+
+    WidgetDelta since(long sequence, long lastSequence, List<Widget> changedWidgets) {
+        return new WidgetDelta(
+                lastSequence,
+                false,
+                new ArrayList<>(shifted.tailMap(sequence, false).values()),
+                changedWidgets,
+                new ArrayList<>(deleted.tailMap(sequence, false).values())
+        );
+    }
+
+    static WidgetDelta reset(long lastSequence, List<Widget> widgets) {
+        return new WidgetDelta(lastSequence, true, Collections.emptyList(), widgets, Collections.emptyList());
+    }
+
+    private void trim() {
+        while (deleted.size() + shifted.size() > retention) {
+            NavigableMap<Long, ?> oldest = shifted.isEmpty()
+                    || (!deleted.isEmpty() && deleted.firstKey() < shifted.firstKey()) ? deleted : shifted;
+            Map.Entry<Long, ?> dropped = oldest.pollFirstEntry();
+            horizon = dropped.getKey();
+        }
+    }
+}
@@ -1,14 +1,26 @@
 package com.tianyupu.widgets;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import reactor.core.publisher.Flux;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.springframework.web.bind.annotation.RequestMethod.DELETE;
@@ -17,66 +29,327 @@ import static org.springframework.web.bind.annotation.RequestMethod.POST;
 import static org.springframework.web.bind.annotation.RequestMethod.PUT;
 
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class WidgetController {
-    private final WidgetService widgetService;
+    private static final String ANY_VERSION = "*";
+    static final int MAX_BATCH_SIZE = 10_000;
+    private static final Duration HEARTBEAT_INTERVAL = Duration.ofSeconds(15);
+
+    private final WidgetBoards boards;
+    private final WidgetResponseCache responseCache;
 
     @Autowired
-    public WidgetController(WidgetService widgetService) {
-        this.widgetService = widgetService;
+    public WidgetController(WidgetBoards boards, WidgetResponseCache responseCache) {
+        this.boards = boards;
+        this.responseCache = responseCache;
     }
 
-    @RequestMapping(path="/widget", method=POST)
-    public ResponseEntity<Widget> createWidget(@RequestBody WidgetRequest widgetRequest) {
-        if (widgetRequest.getX() == null
-                || widgetRequest.getY() == null
-                || widgetRequest.getWidth() == null
-                || widgetRequest.getHeight() == null) {
+    @RequestMapping(path={"/widget", "/boards/{board}/widget"}, method=POST)
+    public ResponseEntity<Widget> createWidget(
+            @PathVariable(value="board", required=false) String board,
+            @RequestBody WidgetRequest widgetRequest
+    ) {
+        if (!isValidCreateRequest(widgetRequest)) {
             return ResponseEntity.badRequest().build();
         }
 
-        Widget newWidget = widgetService.createWidget(widgetRequest);
+        Widget newWidget = writableBoard(boards, board).createWidget(widgetRequest);
         return ResponseEntity
                 .status(HttpStatus.CREATED)
+                .eTag(eTagOf(newWidget))
                 .body(newWidget);
     }
 
-    @RequestMapping(path="/widget/{id}", method=GET)
-    public ResponseEntity<Widget> getWidgetById(@PathVariable(value="id") long id) {
-        return Optional.ofNullable(widgetService.getWidgetById(id))
-                .map(ResponseEntity::ok)
-                .orElse(ResponseEntity.notFound().build());
+    @RequestMapping(path={"/widgets/batch", "/boards/{board}/widgets/batch"}, method=POST)
+    public ResponseEntity<List<WidgetBatchResult>> applyBatch(
+            @PathVariable(value="board", required=false) String board,
+            @RequestBody List<WidgetBatchOperation> operations
+    ) {
+        if (operations.size() > MAX_BATCH_SIZE
+                || !operations.stream().allMatch(WidgetController::isValidBatchOperation)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        return ResponseEntity.ok(writableBoard(boards, board).applyBatch(operations));
+    }
+
+    @RequestMapping(path={"/widget/{id}", "/boards/{board}/widget/{id}"}, method=GET)
+    public ResponseEntity<Widget> getWidgetById(
+            @PathVariable(value="board", required=false) String board,
+            @PathVariable(value="id") long id,
+            WebRequest request
+    ) {
+        Widget widget = responseCache.widget(boardName(board), id);
+        if (widget == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        String eTag = eTagOf(widget);
+        if (request.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+        return ResponseEntity.ok().eTag(eTag).body(widget);
     }
 
-    @RequestMapping(path="/widget/{id}", method=PUT)
+    @RequestMapping(path={"/widget/{id}", "/boards/{board}/widget/{id}"}, method=PUT)
     public ResponseEntity<Widget> updateWidgetById(
+            @PathVariable(value="board", required=false) String board,
             @PathVariable(value="id") long id,
-            @RequestBody WidgetRequest widgetRequest
+            @RequestBody WidgetRequest widgetRequest,
+            @RequestHeader(value="If-Match", required=false) String ifMatch
     ) {
-        if (widgetRequest.getX() == null
-                || widgetRequest.getY() == null
-                || widgetRequest.getWidth() == null
-                || widgetRequest.getHeight() == null
-                || widgetRequest.getZIndex() == null) {
+        if (!isValidUpdateRequest(widgetRequest)) {
             return ResponseEntity.badRequest().build();
         }
+        if (!isValidIfMatch(ifMatch)) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+        }
 
-        if (widgetService.getWidgetById(id) == null) {
-            return ResponseEntity.notFound().build();
+        WidgetService widgetService = readableBoard(boards, board);
+        return Optional.ofNullable(widgetService.updateWidgetById(id, widgetRequest, preconditionOf(ifMatch)))
+                .map(widget -> ResponseEntity.ok().eTag(eTagOf(widget)).body(widget))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @RequestMapping(path={"/widget/{id}", "/boards/{board}/widget/{id}"}, method=DELETE)
+    public ResponseEntity<Widget> deleteWidgetById(
+            @PathVariable(value="board", required=false) String board,
+            @PathVariable(value="id") long id,
+            @RequestHeader(value="If-Match", required=false) String ifMatch
+    ) {
+        if (!isValidIfMatch(ifMatch)) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
         }
 
-        Widget updatedWidget = widgetService.updateWidgetById(id, widgetRequest);
-        return ResponseEntity.ok(updatedWidget);
+        return Optional.ofNullable(readableBoard(boards, board).deleteWidgetById(id, preconditionOf(ifMatch)))
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
     }
 
-    @RequestMapping(path="/widget/{id}", method=DELETE)
-    public ResponseEntity<Widget> deleteWidgetById(@PathVariable(value="id") long id) {
-        return Optional.ofNullable(widgetService.deleteWidgetById(id))
+    @RequestMapping(path={"/widgets", "/boards/{board}/widgets"}, method=GET)
+    public ResponseEntity<List<Widget>> getAllWidgets(
+            @PathVariable(value="board", required=false) String board,
+            @RequestParam(value="after", required=false) Integer after,
+            @RequestParam(value="minZIndex", required=false) Integer minZIndex,
+            @RequestParam(value="maxZIndex", required=false) Integer maxZIndex,
+            @RequestParam(value="limit", required=false) Integer limit,
+            @RequestParam(value="x1", required=false) Integer x1,
+            @RequestParam(value="y1", required=false) Integer y1,
+            @RequestParam(value="x2", required=false) Integer x2,
+            @RequestParam(value="y2", required=false) Integer y2
+    ) {
+        boolean zIndexQuery = after != null || minZIndex != null || maxZIndex != null || limit != null;
+        boolean areaQuery = x1 != null || y1 != null || x2 != null || y2 != null;
+
+        if (zIndexQuery && areaQuery) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (areaQuery) {
+            return getWidgetsInArea(readableBoard(boards, board), x1, y1, x2, y2);
+        }
+        if (zIndexQuery) {
+            return getWidgetsByZIndex(readableBoard(boards, board), after, minZIndex, maxZIndex, limit);
+        }
+        return Optional.ofNullable(responseCache.widgets(boardName(board)))
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
 
-    @RequestMapping(path="/widgets", method=GET)
-    public List<Widget> getAllWidgets() {
-        return widgetService.getAllWidgets();
+    @RequestMapping(path={"/widgets/at", "/boards/{board}/widgets/at"}, method=GET)
+    public ResponseEntity<List<Widget>> getWidgetsAt(
+            @PathVariable(value="board", required=false) String board,
+            @RequestParam(value="x") int x,
+            @RequestParam(value="y") int y,
+            @RequestParam(value="limit", required=false) Integer limit
+    ) {
+        if (limit != null && limit <= 0) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        int stackSize = Optional.ofNullable(limit).orElse(Integer.MAX_VALUE);
+        return ResponseEntity.ok(readableBoard(boards, board).getWidgetsAt(x, y, stackSize));
+    }
+
+    @RequestMapping(path={"/widgets", "/boards/{board}/widgets"}, method=GET, params="since")
+    public ResponseEntity<WidgetDelta> getWidgetsChangedSince(
+            @PathVariable(value="board", required=false) String board,
+            @RequestParam(value="since") long since,
+            @RequestParam Map<String, String> params
+    ) {
+        if (params.size() > 1) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        return ResponseEntity.ok(readableBoard(boards, board).getWidgetsChangedSince(since));
+    }
+
+    @RequestMapping(path={"/widgets/changes", "/boards/{board}/widgets/changes"}, method=GET,
+            produces=MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<WidgetChange>> getChanges(
+            @PathVariable(value="board", required=false) String board,
+            @RequestParam(value="since", required=false) Long since,
+            @RequestHeader(value="Last-Event-ID", required=false) Long lastEventId
+    ) {
+        WidgetChangeFeed changes = readableBoard(boards, board).getChangeFeed();
+        return serverSentEvents(changes.subscribe(lastEventId != null ? lastEventId : since));
+    }
+
+    private ResponseEntity<List<Widget>> getWidgetsByZIndex(
+            WidgetService widgetService,
+            Integer after,
+            Integer minZIndex,
+            Integer maxZIndex,
+            Integer limit
+    ) {
+        if ((limit != null && limit <= 0) || (after != null && after == Integer.MAX_VALUE)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        int fromZIndex = Math.max(
+                Optional.ofNullable(minZIndex).orElse(Integer.MIN_VALUE),
+                Optional.ofNullable(after).map(z -> z + 1).orElse(Integer.MIN_VALUE)
+        );
+        int toZIndex = Optional.ofNullable(maxZIndex).orElse(Integer.MAX_VALUE);
+        int pageSize = Optional.ofNullable(limit).orElse(Integer.MAX_VALUE);
+
+        List<Widget> page = widgetService.getWidgetsByZIndex(fromZIndex, toZIndex, pageSize);
+        if (page.size() < pageSize) {
+            return ResponseEntity.ok(page);
+        }
+
+        String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                .replaceQueryParam("after", page.get(page.size() - 1).getZIndex())
+                .build()
+                .toUriString();
+        return ResponseEntity.ok()
+                .header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"")
+                .body(page);
+    }
+
+    private ResponseEntity<List<Widget>> getWidgetsInArea(
+            WidgetService widgetService,
+            Integer x1,
+            Integer y1,
+            Integer x2,
+            Integer y2
+    ) {
+        if (x1 == null
+                || y1 == null
+                || x2 == null
+                || y2 == null
+                || x1 > x2
+                || y1 > y2) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        return ResponseEntity.ok(widgetService.getWidgetsInArea(x1, y1, x2, y2));
+    }
+
+    static String boardName(String board) {
+        if (board == null) {
+            return WidgetBoards.DEFAULT_BOARD;
+        }
+        if (!WidgetBoards.isValidName(board)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid board name " + board);
+        }
+        return board;
+    }
+
+    static WidgetService readableBoard(WidgetBoards boards, String board) {
+        WidgetService widgetService = boards.find(boardName(board));
+        if (widgetService == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown board " + board);
+        }
+        return widgetService;
+    }
+
+    static WidgetService writableBoard(WidgetBoards boards, String board) {
+        return boards.board(boardName(board));
+    }
+
+    static boolean isValidCreateRequest(WidgetRequest widgetRequest) {
+        return widgetRequest != null
+                && widgetRequest.getX() != null
+                && widgetRequest.getY() != null
+                && widgetRequest.getWidth() != null
+                && widgetRequest.getHeight() != null;
+    }
+
+    static boolean isValidUpdateRequest(WidgetRequest widgetRequest) {
+        return isValidCreateRequest(widgetRequest) && widgetRequest.getZIndex() != null;
+    }
+
+    static boolean isValidBatchOperation(WidgetBatchOperation operation) {
+        if (operation == null || operation.getType() == null) {
+            return false;
+        }
+        switch (operation.getType()) {
+            case CREATE:
+                return isValidCreateRequest(operation.getWidget());
+            case UPDATE:
+                return operation.getId() != null && isValidUpdateRequest(operation.getWidget());
+            default:
+                return operation.getId() != null;
+        }
+    }
+
+    static Flux<ServerSentEvent<WidgetChange>> serverSentEvents(Flux<WidgetChange> changes) {
+        ServerSentEvent<WidgetChange> heartbeat = ServerSentEvent.<WidgetChange>builder().comment("heartbeat").build();
+        return changes
+                .map(change -> ServerSentEvent.builder(change)
+                        .id(String.valueOf(change.getSequence()))
+                        .event(change.getType().name())
+                        .build())
+                .publish(events -> Flux.merge(
+                        events,
+                        Flux.interval(HEARTBEAT_INTERVAL).map(tick -> heartbeat).takeUntilOther(events.then())
+                ));
+    }
+
+    static String eTagOf(Widget widget) {
+        return "\"" + widget.getVersion() + "." + widget.getZIndex() + "\"";
+    }
+
+    static boolean isValidIfMatch(String ifMatch) {
+        return ifMatch == null || ANY_VERSION.equals(ifMatch.trim()) || parseIfMatch(ifMatch) != null;
+    }
+
+    static WidgetPrecondition preconditionOf(String ifMatch) {
+        return ifMatch == null || ANY_VERSION.equals(ifMatch.trim()) ? null : parseIfMatch(ifMatch);
+    }
+
+    /**
+     * Returns the states whose ETag is in the If-Match list, or null if the list is malformed. Tags
+     * are compared strongly, as If-Match requires: weak tags and tags this service never issues
+     * match no state.
+     */
+    private static WidgetPrecondition parseIfMatch(String ifMatch) {
+        WidgetPrecondition precondition = WidgetPrecondition.none();
+        for (String listed : ifMatch.split(",")) {
+            String eTag = listed.trim();
+            boolean weak = eTag.startsWith("W/");
+            String opaqueTag = weak ? eTag.substring(2) : eTag;
+            if (opaqueTag.length() < 2 || !opaqueTag.startsWith("\"") || !opaqueTag.endsWith("\"")) {
+                return null;
+            }
+            WidgetPrecondition state = weak ? null : parseState(opaqueTag.substring(1, opaqueTag.length() - 1));
+            if (state != null) {
+                precondition = precondition.or(state);
+            }
+        }
+        return precondition;
+    }
+
+    private static WidgetPrecondition parseState(String value) {
+        int separator = value.indexOf('.');
+        if (separator < 0) {
+            return null;
+        }
+        try {
+            return WidgetPrecondition.state(
+                    Long.parseLong(value.substring(0, separator)), Integer.parseInt(value.substring(separator + 1)));
+        } catch (NumberFormatException e) {
+            return null;
+        }
     }
 }
@@ -0,0 +1,39 @@
+package com.tianyupu.widgets;
+
+import java.util.List;
+
+public class WidgetDelta {
+    private final long sequence;
+    private final boolean reset;
+    private final List<Integer> shifts;
+    private final List<Widget> widgets;
+    private final List<Long> deleted;
+
+    public WidgetDelta(long sequence, boolean reset, List<Integer> shifts, List<Widget> widgets, List<Long> deleted) {
+        this.sequence = sequence;
+        this.reset = reset;
+        this.shifts = shifts;
+        this.widgets = widgets;
+        this.deleted = deleted;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public boolean isReset() {
+        return reset;
+    }
+
+    public List<Integer> getShifts() {
+        return shifts;
+    }
+
+    public List<Widget> getWidgets() {
+        return widgets;
+    }
+
+    public List<Long> getDeleted() {
+        return deleted;
+    }
+}
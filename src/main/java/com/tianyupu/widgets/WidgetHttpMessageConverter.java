@@ -0,0 +1,82 @@
+package com.tianyupu.widgets;
+
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes {@code Widget} and {@code List<Widget>} responses as JSON without Jackson: responses
+ * taken from the {@link WidgetResponseCache} are written from their cached bytes, anything else
+ * with {@link WidgetJsonWriter}. Everything else, including reading request bodies, is left to the
+ * regular converters.
+ */
+public class WidgetHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+    private final WidgetResponseCache responseCache;
+
+    public WidgetHttpMessageConverter(WidgetResponseCache responseCache) {
+        super(MediaType.APPLICATION_JSON, new MediaType("application", "*+json"));
+        setDefaultCharset(StandardCharsets.UTF_8);
+        this.responseCache = responseCache;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return clazz == Widget.class || List.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        ResolvableType resolved = type != null ? ResolvableType.forType(type) : ResolvableType.forClass(clazz);
+        boolean widgets = resolved.toClass() == Widget.class
+                || (List.class.isAssignableFrom(resolved.toClass()) && resolved.getGeneric(0).toClass() == Widget.class);
+        return widgets && canWrite(mediaType);
+    }
+
+    @Override
+    public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void writeInternal(Object body, Type type, HttpOutputMessage outputMessage) throws IOException {
+        byte[] cached = responseCache.encoded(body);
+        if (cached != null) {
+            outputMessage.getBody().write(cached);
+        } else if (body instanceof Widget) {
+            WidgetJsonWriter.forCurrentThread().write((Widget) body, outputMessage.getBody());
+        } else {
+            WidgetJsonWriter.forCurrentThread().writeList((List<Widget>) body, outputMessage.getBody());
+        }
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException(
+                "WidgetHttpMessageConverter only writes responses and cannot read " + clazz.getName(), inputMessage);
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException(
+                "WidgetHttpMessageConverter only writes responses and cannot read " + type.getTypeName(), inputMessage);
+    }
+}
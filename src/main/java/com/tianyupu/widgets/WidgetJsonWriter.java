@@ -0,0 +1,178 @@
+package com.tianyupu.widgets;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes widgets as JSON straight into a byte buffer, producing the same output as Jackson with the
+ * application's default settings.
+ *
+ * Field names are pre-encoded, numbers and dates are formatted digit by digit and the buffer is
+ * reused between calls, so writing a list allocates nothing per widget. An instance is not
+ * thread-safe; {@link #forCurrentThread()} hands out one per thread.
+ */
+public final class WidgetJsonWriter {
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_WIDGET_SIZE = 256;
+    private static final ThreadLocal<WidgetJsonWriter> WRITERS = ThreadLocal.withInitial(WidgetJsonWriter::new);
+
+    private static final byte[] X = ascii("{\"x\":");
+    private static final byte[] Y = ascii(",\"y\":");
+    private static final byte[] WIDTH = ascii(",\"width\":");
+    private static final byte[] HEIGHT = ascii(",\"height\":");
+    private static final byte[] Z_INDEX = ascii(",\"zindex\":");
+    private static final byte[] LAST_MODIFIED = ascii(",\"lastModified\":\"");
+    private static final byte[] VERSION = ascii("\",\"version\":");
+    private static final byte[] ID = ascii(",\"id\":");
+    private static final byte[] UTC_OFFSET = ascii("+0000");
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final byte[] digits = new byte[20];
+    private OutputStream out;
+    private int position;
+
+    public static WidgetJsonWriter forCurrentThread() {
+        return WRITERS.get();
+    }
+
+    public void write(Widget widget, OutputStream out) throws IOException {
+        this.out = out;
+        this.position = 0;
+        try {
+            widget.writeJson(this);
+            flush();
+        } finally {
+            this.out = null;
+        }
+    }
+
+    public void writeList(List<Widget> widgets, OutputStream out) throws IOException {
+        this.out = out;
+        this.position = 0;
+        try {
+            buffer[position++] = '[';
+            for (int i = 0; i < widgets.size(); i++) {
+                if (i > 0) {
+                    buffer[position++] = ',';
+                }
+                widgets.get(i).writeJson(this);
+            }
+            buffer[position++] = ']';
+            flush();
+        } finally {
+            this.out = null;
+        }
+    }
+
+    public void writeLines(List<Widget> widgets, OutputStream out) throws IOException {
+        this.out = out;
+        this.position = 0;
+        try {
+            for (Widget widget : widgets) {
+                widget.writeJson(this);
+                buffer[position++] = '\n';
+            }
+            flush();
+        } finally {
+            this.out = null;
+        }
+    }
+
+    void writeWidget(int x, int y, int width, int height, int zIndex, long lastModified, long version, long id)
+            throws IOException {
+        if (position > BUFFER_SIZE - MAX_WIDGET_SIZE) {
+            flush();
+        }
+        put(X);
+        putLong(x);
+        put(Y);
+        putLong(y);
+        put(WIDTH);
+        putLong(width);
+        put(HEIGHT);
+        putLong(height);
+        put(Z_INDEX);
+        putLong(zIndex);
+        put(LAST_MODIFIED);
+        putDate(lastModified);
+        put(VERSION);
+        putLong(version);
+        put(ID);
+        putLong(id);
+        buffer[position++] = '}';
+    }
+
+    private void flush() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+
+    private void put(byte[] bytes) {
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void putLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            put(ascii(Long.toString(value)));
+            return;
+        }
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        while (count > 0) {
+            buffer[position++] = digits[--count];
+        }
+    }
+
+    private void putDate(long millis) {
+        long days = Math.floorDiv(millis, MILLIS_PER_DAY);
+        int millisOfDay = (int) Math.floorMod(millis, MILLIS_PER_DAY);
+
+        long era = Math.floorDiv(days + 719_468, 146_097);
+        long dayOfEra = days + 719_468 - era * 146_097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+        int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        putPadded(year, 4);
+        buffer[position++] = '-';
+        putPadded(month, 2);
+        buffer[position++] = '-';
+        putPadded(day, 2);
+        buffer[position++] = 'T';
+        putPadded(millisOfDay / 3_600_000, 2);
+        buffer[position++] = ':';
+        putPadded(millisOfDay / 60_000 % 60, 2);
+        buffer[position++] = ':';
+        putPadded(millisOfDay / 1000 % 60, 2);
+        buffer[position++] = '.';
+        putPadded(millisOfDay % 1000, 3);
+        put(UTC_OFFSET);
+    }
+
+    private void putPadded(long value, int width) {
+        for (long limit = 10; width > 1; width--, limit *= 10) {
+            if (value < limit) {
+                buffer[position++] = '0';
+            }
+        }
+        putLong(value);
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,124 @@
+package com.tianyupu.widgets;
+
+import java.nio.ByteBuffer;
+
+public class WidgetMutation {
+    public enum Type {
+        CREATE,
+        UPDATE,
+        DELETE
+    }
+
+    static final int MAX_ENCODED_SIZE = 1 + 8 + 4 * 5 + 1 + 8 + 8;
+
+    private final Type type;
+    private final long id;
+    private final int x;
+    private final int y;
+    private final int width;
+    private final int height;
+    private final Integer zIndex;
+    private final long version;
+    private final long lastModified;
+
+    private WidgetMutation(Type type, long id, int x, int y, int width, int height, Integer zIndex,
+                           long version, long lastModified) {
+        this.type = type;
+        this.id = id;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.zIndex = zIndex;
+        this.version = version;
+        this.lastModified = lastModified;
+    }
+
+    public static WidgetMutation created(Widget widget, Integer requestedZIndex) {
+        return new WidgetMutation(Type.CREATE, widget.getId(), widget.getX(), widget.getY(), widget.getWidth(),
+                widget.getHeight(), requestedZIndex, widget.getVersion(), widget.getLastModified().getTime());
+    }
+
+    public static WidgetMutation updated(Widget widget) {
+        return new WidgetMutation(Type.UPDATE, widget.getId(), widget.getX(), widget.getY(), widget.getWidth(),
+                widget.getHeight(), widget.getZIndex(), widget.getVersion(), widget.getLastModified().getTime());
+    }
+
+    public static WidgetMutation restored(long id, int x, int y, int width, int height, int zIndex,
+                                          long version, long lastModified) {
+        return new WidgetMutation(Type.UPDATE, id, x, y, width, height, zIndex, version, lastModified);
+    }
+
+    public static WidgetMutation deleted(Widget widget) {
+        return new WidgetMutation(Type.DELETE, widget.getId(), 0, 0, 0, 0, null, 0, 0);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public Integer getZIndex() {
+        return zIndex;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    void writeTo(ByteBuffer buffer) {
+        buffer.put((byte) type.ordinal());
+        buffer.putLong(id);
+        if (type == Type.DELETE) {
+            return;
+        }
+        buffer.putInt(x);
+        buffer.putInt(y);
+        buffer.putInt(width);
+        buffer.putInt(height);
+        buffer.put((byte) (zIndex != null ? 1 : 0));
+        buffer.putInt(zIndex != null ? zIndex : 0);
+        buffer.putLong(version);
+        buffer.putLong(lastModified);
+    }
+
+    static WidgetMutation readFrom(ByteBuffer buffer) {
+        Type type = Type.values()[buffer.get()];
+        long id = buffer.getLong();
+        if (type == Type.DELETE) {
+            return new WidgetMutation(type, id, 0, 0, 0, 0, null, 0, 0);
+        }
+        int x = buffer.getInt();
+        int y = buffer.getInt();
+        int width = buffer.getInt();
+        int height = buffer.getInt();
+        boolean hasZIndex = buffer.get() != 0;
+        int zIndex = buffer.getInt();
+        long version = buffer.getLong();
+        long lastModified = buffer.getLong();
+        return new WidgetMutation(type, id, x, y, width, height, hasZIndex ? zIndex : null, version, lastModified);
+    }
+}
@@ -0,0 +1,64 @@
+package com.tianyupu.widgets;
+
+import java.util.Arrays;
+
+/**
+ * The states a conditional update or delete may be applied to. A widget matches when it is at one
+ * of the given versions and, where one was given with it, at that z-index. Shifts move widgets
+ * without changing their version, so a precondition taken from an ETag checks the z-index as well.
+ */
+public final class WidgetPrecondition {
+    private static final WidgetPrecondition NONE = new WidgetPrecondition(new long[0], new Integer[0]);
+
+    private final long[] versions;
+    private final Integer[] zIndexes;
+
+    private WidgetPrecondition(long[] versions, Integer[] zIndexes) {
+        this.versions = versions;
+        this.zIndexes = zIndexes;
+    }
+
+    public static WidgetPrecondition none() {
+        return NONE;
+    }
+
+    /**
+     * Returns a precondition on the version alone, or null, for no precondition, if the version is.
+     */
+    public static WidgetPrecondition version(Long version) {
+        return version == null ? null : new WidgetPrecondition(new long[]{version}, new Integer[]{null});
+    }
+
+    public static WidgetPrecondition state(long version, int zIndex) {
+        return new WidgetPrecondition(new long[]{version}, new Integer[]{zIndex});
+    }
+
+    public WidgetPrecondition or(WidgetPrecondition other) {
+        long[] orVersions = Arrays.copyOf(versions, versions.length + other.versions.length);
+        Integer[] orZIndexes = Arrays.copyOf(zIndexes, zIndexes.length + other.zIndexes.length);
+        System.arraycopy(other.versions, 0, orVersions, versions.length, other.versions.length);
+        System.arraycopy(other.zIndexes, 0, orZIndexes, zIndexes.length, other.zIndexes.length);
+        return new WidgetPrecondition(orVersions, orZIndexes);
+    }
+
+    public boolean matches(long version, int zIndex) {
+        for (int i = 0; i < versions.length; i++) {
+            if (versions[i] == version && (zIndexes[i] == null || zIndexes[i] == zIndex)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < versions.length; i++) {
+            description.append(i == 0 ? "" : " or ").append("version ").append(versions[i]);
+            if (zIndexes[i] != null) {
+                description.append(" at z-index ").append(zIndexes[i]);
+            }
+        }
+        return versions.length == 0 ? "no known state" : description.toString();
+    }
+}
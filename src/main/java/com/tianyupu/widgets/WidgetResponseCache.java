@@ -0,0 +1,357 @@
+package com.tianyupu.widgets;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.ConcurrentStatsCounter;
+import com.github.benmanes.caffeine.cache.stats.StatsCounter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Caches single widgets and the full widget list of each board together with their JSON encoding,
+ * so that repeated reads skip both the store and serialization.
+ *
+ * Entries are invalidated synchronously from each board's {@link WidgetChangeFeed}: a creation
+ * drops the list, and an update or deletion drops the widget and the list. A shift drops the list
+ * and is recorded in a short per-board history, and a cached widget is only checked against the
+ * shifts recorded since it was last read. A shift therefore costs the same however many widgets
+ * it moves, and a widget below it stays cached. A response loaded while a change was being
+ * applied to its board is returned but not cached. Concurrent misses on the same response share
+ * one load and one encoding. All boards share one budget;
+ * eviction is Caffeine's W-TinyLFU, bounded by the encoded size, and a list that would take more
+ * than half of the budget is never cached.
+ */
+public class WidgetResponseCache {
+    private static final long ALL_WIDGETS = 0;
+    private static final int ENTRY_OVERHEAD = 64;
+    private static final int MIN_WIDGET_SIZE = 110;
+    private static final int SHIFT_HISTORY = 256;
+
+    private final Map<String, Board> boards = new ConcurrentHashMap<>();
+    private final Cache<Key, Entry> cache;
+    private final Cache<Object, Encoding> encodingsByValue;
+    private final StatsCounter stats = new ConcurrentStatsCounter();
+    private final Map<Key, Load> loads = new ConcurrentHashMap<>();
+    private final LongAdder coalesced = new LongAdder();
+    private final long maximumBytes;
+
+    public WidgetResponseCache(WidgetBoards widgetBoards, long maximumBytes) {
+        this.maximumBytes = maximumBytes;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maximumBytes)
+                .weigher((Key key, Entry entry) -> entry.json.length + ENTRY_OVERHEAD)
+                .recordStats(() -> stats)
+                .build();
+        this.encodingsByValue = Caffeine.newBuilder().weakKeys().build();
+        widgetBoards.onBoardCreated((name, widgetService) -> boards.put(name, new Board(name, widgetService)));
+    }
+
+    public Widget widget(String board, long id) {
+        Board state = boards.get(board);
+        if (state == null) {
+            return null;
+        }
+        Key key = new Key(board, id);
+        Entry cached = cache.asMap().get(key);
+        if (cached != null && state.isCurrent(cached)) {
+            stats.recordHits(1);
+            return (Widget) cached.value;
+        }
+        if (cached != null) {
+            cache.asMap().remove(key, cached);
+        }
+        stats.recordMisses(1);
+
+        Entry loaded = load(state, key, () -> {
+            Widget widget = state.widgetService.getWidgetById(id);
+            if (widget == null) {
+                return null;
+            }
+            Widget copy = widget.copy();
+            return new Entry(key, copy, copy.getZIndex(), encode(copy));
+        });
+        return loaded != null ? (Widget) loaded.value : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<Widget> widgets(String board) {
+        Board state = boards.get(board);
+        if (state == null) {
+            return null;
+        }
+        Key key = new Key(board, ALL_WIDGETS);
+        Entry cached = cache.asMap().get(key);
+        if (cached != null) {
+            stats.recordHits(1);
+            return (List<Widget>) cached.value;
+        }
+        stats.recordMisses(1);
+
+        Entry loaded = load(state, key, () -> {
+            List<Widget> widgets = state.widgetService.getAllWidgets();
+            boolean cacheable = (long) widgets.size() * MIN_WIDGET_SIZE <= maximumBytes / 2;
+            return new Entry(key, widgets, Integer.MIN_VALUE, cacheable ? encode(widgets) : null);
+        });
+        return (List<Widget>) loaded.value;
+    }
+
+    /**
+     * Loads an entry on a miss, sharing the load with every concurrent miss on the same key. A
+     * caller that has seen a newer change than the load in flight loads on its own instead, so a
+     * read never returns data older than a write that completed before it started.
+     */
+    private Entry load(Board state, Key key, Supplier<Entry> loader) {
+        long seen = state.lastChange;
+        Load load = new Load(seen);
+        Load inFlight = loads.putIfAbsent(key, load);
+        if (inFlight != null && inFlight.seen == seen) {
+            coalesced.increment();
+            return inFlight.await();
+        }
+        if (inFlight != null && !loads.replace(key, inFlight, load)) {
+            load = null;
+        }
+        try {
+            Entry entry = loader.get();
+            if (entry != null && entry.json != null) {
+                boolean stored = state.store(seen, entry);
+                encodingsByValue.put(entry.value, new Encoding(key, entry.json, stored));
+            }
+            if (load != null) {
+                load.complete(entry);
+            }
+            return entry;
+        } catch (RuntimeException | Error e) {
+            if (load != null) {
+                load.completeExceptionally(e);
+            }
+            throw e;
+        } finally {
+            if (load != null) {
+                loads.remove(key, load);
+            }
+        }
+    }
+
+    /**
+     * Returns the cached JSON of a widget or list previously returned by this cache, or null if
+     * it has been invalidated or evicted since. A value that was loaded but never cached keeps its
+     * JSON for as long as the requests that shared its load hold on to it. Values are looked up by
+     * identity, since the same id means different widgets on different boards.
+     */
+    byte[] encoded(Object value) {
+        Encoding encoding = encodingsByValue.getIfPresent(value);
+        if (encoding == null) {
+            return null;
+        }
+        if (!encoding.cached) {
+            return encoding.json;
+        }
+        Entry entry = cache.asMap().get(encoding.key);
+        if (entry == null || entry.json != encoding.json) {
+            return null;
+        }
+        Board state = boards.get(encoding.key.board);
+        return state != null && state.isCurrent(entry) ? entry.json : null;
+    }
+
+    long coalescedLoads() {
+        return coalesced.sum();
+    }
+
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "widgetResponses");
+        FunctionCounter.builder("widgets.cache.coalesced", coalesced, LongAdder::sum)
+                .description("Cache misses served by a load already in flight for the same response")
+                .register(registry);
+    }
+
+    private static byte[] encode(Widget widget) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(MIN_WIDGET_SIZE * 2);
+        try {
+            WidgetJsonWriter.forCurrentThread().write(widget, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] encode(List<Widget> widgets) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(widgets.size() * MIN_WIDGET_SIZE + 2);
+        try {
+            WidgetJsonWriter.forCurrentThread().writeList(widgets, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private final class Board {
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final String name;
+        private final WidgetService widgetService;
+        private final int[] shiftedFrom = new int[SHIFT_HISTORY];
+        private volatile long lastChange;
+        private volatile long shifts;
+
+        private Board(String name, WidgetService widgetService) {
+            this.name = name;
+            this.widgetService = widgetService;
+            widgetService.getChangeFeed().onChange(this::invalidate);
+        }
+
+        private void invalidate(WidgetChange change) {
+            lock.writeLock().lock();
+            try {
+                lastChange = change.getSequence();
+                cache.invalidate(new Key(name, ALL_WIDGETS));
+                switch (change.getType()) {
+                    case UPDATED:
+                    case DELETED:
+                        cache.invalidate(new Key(name, change.getWidget().getId()));
+                        break;
+                    case SHIFTED:
+                        shiftedFrom[(int) (shifts % SHIFT_HISTORY)] = change.getFromZIndex();
+                        shifts++;
+                        break;
+                    default:
+                        break;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private boolean store(long seen, Entry entry) {
+            lock.readLock().lock();
+            try {
+                if (lastChange != seen) {
+                    return false;
+                }
+                entry.checkedShifts = shifts;
+                cache.put(entry.key, entry);
+                return true;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * Returns whether no shift recorded since the entry was last checked has moved it. An
+         * entry that has fallen further behind than the shift history is treated as moved.
+         */
+        private boolean isCurrent(Entry entry) {
+            if (entry.checkedShifts == shifts) {
+                return true;
+            }
+            lock.readLock().lock();
+            try {
+                long checkedShifts = entry.checkedShifts;
+                if (shifts - checkedShifts > SHIFT_HISTORY) {
+                    return false;
+                }
+                for (long shift = checkedShifts; shift < shifts; shift++) {
+                    if (shiftedFrom[(int) (shift % SHIFT_HISTORY)] <= entry.zIndex) {
+                        return false;
+                    }
+                }
+                entry.checkedShifts = shifts;
+                return true;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    private static final class Key {
+        private final String board;
+        private final long id;
+
+        private Key(String board, long id) {
+            this.board = board;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key key = (Key) o;
+
+            return id == key.id && board.equals(key.board);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * board.hashCode() + (int) (id ^ (id >>> 32));
+        }
+    }
+
+    private static final class Entry {
+        private final Key key;
+        private final Object value;
+        private final int zIndex;
+        private final byte[] json;
+        private volatile long checkedShifts;
+
+        private Entry(Key key, Object value, int zIndex, byte[] json) {
+            this.key = key;
+            this.value = value;
+            this.zIndex = zIndex;
+            this.json = json;
+        }
+    }
+
+    /**
+     * The JSON of a value handed out by the cache. It holds no reference to the value, so that
+     * the value can be collected once no request uses it.
+     */
+    private static final class Encoding {
+        private final Key key;
+        private final byte[] json;
+        private final boolean cached;
+
+        private Encoding(Key key, byte[] json, boolean cached) {
+            this.key = key;
+            this.json = json;
+            this.cached = cached;
+        }
+    }
+
+    private static final class Load extends CompletableFuture<Entry> {
+        private final long seen;
+
+        private Load(long seen) {
+            this.seen = seen;
+        }
+
+        private Entry await() {
+            try {
+                return join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.tianyupu.widgets;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class WidgetSerializationConfiguration {
+
+    @Bean
+    public WidgetResponseCache widgetResponseCache(
+            WidgetBoards widgetBoards,
+            MeterRegistry registry,
+            @Value("${widgets.cache.max-bytes:67108864}") long maximumBytes
+    ) {
+        WidgetResponseCache responseCache = new WidgetResponseCache(widgetBoards, maximumBytes);
+        responseCache.bindTo(registry);
+        return responseCache;
+    }
+
+    @Bean
+    public WidgetHttpMessageConverter widgetHttpMessageConverter(WidgetResponseCache widgetResponseCache) {
+        return new WidgetHttpMessageConverter(widgetResponseCache);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "widgets.http.direct-buffers", matchIfMissing = true)
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> directSocketBuffers() {
+        return factory -> factory.addConnectorCustomizers(
+                connector -> connector.setProperty("socket.directBuffer", "true"));
+    }
+}
@@ -1,15 +1,45 @@
 package com.tianyupu.widgets;
 
 import java.util.List;
+import java.util.function.IntConsumer;
 
 public interface WidgetService {
     Widget createWidget(WidgetRequest widgetRequest);
 
+    List<WidgetBatchResult> applyBatch(List<WidgetBatchOperation> operations);
+
     Widget getWidgetById(long id);
 
-    Widget updateWidgetById(long id, WidgetRequest widgetRequest);
+    default Widget updateWidgetById(long id, WidgetRequest widgetRequest) {
+        return updateWidgetById(id, widgetRequest, null);
+    }
+
+    Widget updateWidgetById(long id, WidgetRequest widgetRequest, WidgetPrecondition precondition);
+
+    default Widget deleteWidgetById(long id) {
+        return deleteWidgetById(id, null);
+    }
 
-    Widget deleteWidgetById(long id);
+    Widget deleteWidgetById(long id, WidgetPrecondition precondition);
 
     List<Widget> getAllWidgets();
+
+    List<Widget> getWidgetsByZIndex(int fromZIndex, int toZIndex, int limit);
+
+    List<Widget> getWidgetsInArea(int x1, int y1, int x2, int y2);
+
+    List<Widget> getWidgetsAt(int x, int y, int limit);
+
+    WidgetDelta getWidgetsChangedSince(long sequence);
+
+    int getWidgetCount();
+
+    WidgetChangeFeed getChangeFeed();
+
+    /**
+     * Adds a listener for the number of widgets each z-index insert shifts, alongside any added
+     * before it.
+     */
+    default void onZIndexShift(IntConsumer listener) {
+    }
 }
@@ -0,0 +1,152 @@
+package com.tianyupu.widgets;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reads and writes compact binary snapshots of the widget store.
+ *
+ * A snapshot records the last log sequence it covers, the id counter and every widget in ascending
+ * z-index order. Files are written under a temporary name and renamed into place, so a crash while
+ * snapshotting leaves the previous snapshot intact.
+ */
+public class WidgetSnapshotFile {
+    private static final int MAGIC = 0x57534e50;
+    private static final int FORMAT_VERSION = 1;
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".bin";
+
+    private final Path directory;
+
+    public WidgetSnapshotFile(Path directory) {
+        this.directory = directory;
+    }
+
+    public void write(Snapshot snapshot) {
+        Path target = directory.resolve(String.format("%s%020d%s", PREFIX, snapshot.sequence, SUFFIX));
+        Path temporary = directory.resolve(target.getFileName() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temporary.toFile());
+             DataOutputStream output = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeLong(snapshot.sequence);
+            output.writeLong(snapshot.counter);
+            output.writeInt(snapshot.widgets.size());
+            for (WidgetMutation widget : snapshot.widgets) {
+                output.writeLong(widget.getId());
+                output.writeInt(widget.getX());
+                output.writeInt(widget.getY());
+                output.writeInt(widget.getWidth());
+                output.writeInt(widget.getHeight());
+                output.writeInt(widget.getZIndex());
+                output.writeLong(widget.getVersion());
+                output.writeLong(widget.getLastModified());
+            }
+            output.flush();
+            file.getFD().sync();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        try {
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+            for (Path older : snapshots()) {
+                if (!older.equals(target)) {
+                    Files.deleteIfExists(older);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Optional<Snapshot> readLatest() {
+        try {
+            List<Path> snapshots = snapshots();
+            for (int i = snapshots.size() - 1; i >= 0; i--) {
+                Optional<Snapshot> snapshot = read(snapshots.get(i));
+                if (snapshot.isPresent()) {
+                    return snapshot;
+                }
+            }
+            return Optional.empty();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Optional<Snapshot> read(Path path) {
+        try (InputStream file = Files.newInputStream(path);
+             DataInputStream input = new DataInputStream(new BufferedInputStream(file, 1 << 16))) {
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+                return Optional.empty();
+            }
+            long sequence = input.readLong();
+            long counter = input.readLong();
+            int count = input.readInt();
+            List<WidgetMutation> widgets = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long id = input.readLong();
+                int x = input.readInt();
+                int y = input.readInt();
+                int width = input.readInt();
+                int height = input.readInt();
+                int zIndex = input.readInt();
+                long version = input.readLong();
+                long lastModified = input.readLong();
+                widgets.add(WidgetMutation.restored(id, x, y, width, height, zIndex, version, lastModified));
+            }
+            return Optional.of(new Snapshot(sequence, counter, widgets));
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    private List<Path> snapshots() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(path -> path.getFileName().toString().startsWith(PREFIX))
+                    .filter(path -> path.getFileName().toString().endsWith(SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    public static class Snapshot {
+        private final long sequence;
+        private final long counter;
+        private final List<WidgetMutation> widgets;
+
+        public Snapshot(long sequence, long counter, List<WidgetMutation> widgets) {
+            this.sequence = sequence;
+            this.counter = counter;
+            this.widgets = widgets;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public long getCounter() {
+            return counter;
+        }
+
+        public List<WidgetMutation> getWidgets() {
+            return widgets;
+        }
+    }
+}
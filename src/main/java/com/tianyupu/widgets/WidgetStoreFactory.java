@@ -0,0 +1,19 @@
+package com.tianyupu.widgets;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Creates the store behind each board of {@link WidgetBoards}.
+ */
+@FunctionalInterface
+public interface WidgetStoreFactory {
+    WidgetService create(String board);
+
+    /**
+     * Returns the boards stored by an earlier run, which are reopened at start-up.
+     */
+    default Collection<String> existingBoards() {
+        return Collections.emptyList();
+    }
+}
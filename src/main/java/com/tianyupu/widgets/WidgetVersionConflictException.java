@@ -0,0 +1,12 @@
+package com.tianyupu.widgets;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+public class WidgetVersionConflictException extends RuntimeException {
+    public WidgetVersionConflictException(long id, WidgetPrecondition expected, long actualVersion, int actualZIndex) {
+        super("Widget " + id + " is at version " + actualVersion + " at z-index " + actualZIndex
+                + ", expected " + expected);
+    }
+}
@@ -0,0 +1,283 @@
+package com.tianyupu.widgets;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of widget mutations kept in fixed-size, memory-mapped segment files.
+ *
+ * Each record is laid out as {@code [length][crc32][sequence][mutation]}, and a zero length marks
+ * the end of a segment. Appends only copy into the mapping; a background thread forces the mapping
+ * to disk and every caller waiting in {@link #awaitDurable(long)} is released by the same force,
+ * so concurrent writers share one fsync (group commit).
+ */
+public class WriteAheadLog implements Closeable {
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER_SIZE = 4 + 4;
+    private static final int RECORD_SIZE_LIMIT = HEADER_SIZE + 8 + WidgetMutation.MAX_ENCODED_SIZE;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final Thread flusher;
+    private final CRC32 crc = new CRC32();
+    private final ByteBuffer scratch = ByteBuffer.allocate(RECORD_SIZE_LIMIT);
+
+    private MappedByteBuffer segment;
+    private long appendedSequence;
+    private long durableSequence;
+    private boolean closed;
+
+    public WriteAheadLog(Path directory, int segmentSize, long afterSequence, Consumer<Record> replay) {
+        if (segmentSize < RECORD_SIZE_LIMIT * 2) {
+            throw new IllegalArgumentException("Segment size is too small");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        try {
+            Files.createDirectories(directory);
+            recover(afterSequence, replay);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.durableSequence = appendedSequence;
+        this.flusher = new Thread(this::flushLoop, "widget-wal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    public synchronized long append(WidgetMutation mutation) {
+        if (closed) {
+            throw new IllegalStateException("Write-ahead log is closed");
+        }
+        long sequence = appendedSequence + 1;
+        scratch.clear();
+        scratch.putLong(sequence);
+        mutation.writeTo(scratch);
+        scratch.flip();
+        int length = scratch.remaining();
+
+        if (segment.remaining() < HEADER_SIZE + length + 4) {
+            roll(sequence);
+        }
+
+        crc.reset();
+        crc.update(scratch.array(), 0, length);
+        segment.putInt(length);
+        segment.putInt((int) crc.getValue());
+        segment.put(scratch);
+
+        appendedSequence = sequence;
+        notifyAll();
+        return sequence;
+    }
+
+    public synchronized void awaitDurable(long sequence) {
+        boolean interrupted = false;
+        while (durableSequence < sequence && !closed) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (durableSequence < sequence) {
+            throw new IllegalStateException("Write-ahead log closed before sequence " + sequence + " was durable");
+        }
+    }
+
+    public synchronized long lastSequence() {
+        return appendedSequence;
+    }
+
+    public synchronized void truncateBefore(long sequence) {
+        try {
+            List<Path> segments = segments();
+            for (int i = 0; i + 1 < segments.size(); i++) {
+                if (firstSequenceOf(segments.get(i + 1)) <= sequence + 1) {
+                    Files.deleteIfExists(segments.get(i));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            segment.force();
+            durableSequence = appendedSequence;
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            MappedByteBuffer toFlush;
+            long target;
+            synchronized (this) {
+                while (durableSequence == appendedSequence && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+                toFlush = segment;
+                target = appendedSequence;
+            }
+            toFlush.force();
+            synchronized (this) {
+                durableSequence = Math.max(durableSequence, target);
+                notifyAll();
+            }
+        }
+    }
+
+    private void recover(long afterSequence, Consumer<Record> replay) throws IOException {
+        List<Path> segments = segments();
+        appendedSequence = afterSequence;
+        if (segments.isEmpty()) {
+            segment = map(segmentPath(afterSequence + 1));
+            return;
+        }
+
+        for (int i = 0; i < segments.size(); i++) {
+            MappedByteBuffer mapped = map(segments.get(i));
+            boolean last = i == segments.size() - 1;
+            boolean complete = replaySegment(mapped, afterSequence, replay);
+            if (last || !complete) {
+                for (int j = i + 1; j < segments.size(); j++) {
+                    Files.delete(segments.get(j));
+                }
+                int end = mapped.position();
+                byte[] zeros = new byte[8192];
+                while (mapped.hasRemaining()) {
+                    mapped.put(zeros, 0, Math.min(zeros.length, mapped.remaining()));
+                }
+                mapped.force();
+                mapped.position(end);
+                segment = mapped;
+                return;
+            }
+        }
+    }
+
+    private boolean replaySegment(MappedByteBuffer mapped, long afterSequence, Consumer<Record> replay) {
+        while (mapped.remaining() >= HEADER_SIZE) {
+            int start = mapped.position();
+            int length = mapped.getInt();
+            int checksum = mapped.getInt();
+            if (length == 0) {
+                mapped.position(start);
+                return true;
+            }
+            if (length < 0 || length > mapped.remaining() || length > RECORD_SIZE_LIMIT) {
+                mapped.position(start);
+                return false;
+            }
+
+            ByteBuffer payload = mapped.slice();
+            payload.limit(length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            long sequence = payload.getLong(0);
+            boolean inOrder = sequence == appendedSequence + 1 || (sequence <= afterSequence && appendedSequence == afterSequence);
+            if ((int) crc.getValue() != checksum || !inOrder) {
+                mapped.position(start);
+                return false;
+            }
+
+            payload.position(8);
+            if (sequence > afterSequence) {
+                replay.accept(new Record(sequence, WidgetMutation.readFrom(payload)));
+                appendedSequence = sequence;
+            }
+            mapped.position(start + HEADER_SIZE + length);
+        }
+        return true;
+    }
+
+    private void roll(long nextSequence) {
+        segment.putInt(0);
+        segment.force();
+        try {
+            segment = map(segmentPath(nextSequence));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    .filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
+
+    private Path segmentPath(long firstSequence) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+    }
+
+    private static long firstSequenceOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    public static class Record {
+        private final long sequence;
+        private final WidgetMutation mutation;
+
+        Record(long sequence, WidgetMutation mutation) {
+            this.sequence = sequence;
+            this.mutation = mutation;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public WidgetMutation getMutation() {
+            return mutation;
+        }
+    }
+}
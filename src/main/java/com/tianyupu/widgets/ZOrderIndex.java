@@ -0,0 +1,459 @@
+package com.tianyupu.widgets;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
+
+/**
+ * Keeps entries ordered by z-index in a treap whose subtrees carry lazy z-index offsets.
+ *
+ * Inserting at a z-index shifts every entry at or above it by one, but the shift is recorded
+ * once on the root of the affected subtree rather than on every entry, so inserts and removals
+ * take logarithmic time and the maximum z-index is available in constant time.
+ *
+ * The ordered values are cached as an immutable snapshot which is rebuilt on the first read after
+ * a write, so repeated reads of an unchanged index neither traverse nor allocate. An index created
+ * with a {@link Copier} returns copies that carry the z-index each entry had when it was read,
+ * so a list of values never shows an entry at a z-index it has since left.
+ */
+public class ZOrderIndex<T> {
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Copier<T> copier;
+    private Entry<T> root;
+    private int size;
+    private int maxZIndex = Integer.MIN_VALUE;
+    private volatile int version;
+    private volatile Snapshot<T> snapshot = new Snapshot<>(0, Collections.emptyList());
+    private volatile IntConsumer shiftListener = shifted -> { };
+
+    public ZOrderIndex() {
+        this((value, zIndex) -> value);
+    }
+
+    public ZOrderIndex(Copier<T> copier) {
+        this.copier = copier;
+    }
+
+    /**
+     * Adds a listener that is told how many entries each insert at a z-index shifted. Listeners
+     * are never removed.
+     */
+    public synchronized void onShift(IntConsumer listener) {
+        shiftListener = shiftListener.andThen(listener);
+    }
+
+    public Entry<T> insert(Entry<T> entry, int zIndex) {
+        lock.writeLock().lock();
+        try {
+            checkDetached(entry);
+            version++;
+            add(entry, zIndex);
+            return entry;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Entry<T> insertOnTop(Entry<T> entry) {
+        lock.writeLock().lock();
+        try {
+            checkDetached(entry);
+            version++;
+            int zIndex = maxZIndex + 1;
+            link(entry, zIndex);
+            root = detachRoot(merge(root, entry));
+            maxZIndex = zIndex;
+            size++;
+            return entry;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Entry<T> place(Entry<T> entry, int zIndex) {
+        lock.writeLock().lock();
+        try {
+            checkDetached(entry);
+            version++;
+            relink(entry, zIndex);
+            size++;
+            return entry;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Moves the entry to the given z-index. If another entry already has that z-index, it and
+     * every entry above it move up by one first, as on an insert, so no two entries share a
+     * z-index. Returns the number of entries moved up. Moving an entry to its own z-index moves
+     * nothing, but still counts as a write for the values snapshot.
+     */
+    public int moveOnto(Entry<T> entry, int zIndex) {
+        lock.writeLock().lock();
+        try {
+            if (entry.index != this) {
+                entry.zIndex = zIndex;
+                return 0;
+            }
+            version++;
+            if (absoluteZIndex(entry) == zIndex) {
+                return 0;
+            }
+            unlink(entry);
+            if (occupied(zIndex)) {
+                size--;
+                maxZIndex = lastZIndex();
+                return add(entry, zIndex);
+            }
+            relink(entry, zIndex);
+            return 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Entry<T> entry) {
+        lock.writeLock().lock();
+        try {
+            if (entry.index != this) {
+                return;
+            }
+            version++;
+            unlink(entry);
+            entry.index = null;
+            size--;
+            maxZIndex = size == 0 ? Integer.MIN_VALUE : lastZIndex();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int maxZIndex() {
+        lock.readLock().lock();
+        try {
+            return maxZIndex;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(int zIndex) {
+        lock.readLock().lock();
+        try {
+            return occupied(zIndex);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<T> values() {
+        Snapshot<T> cached = snapshot;
+        if (cached.version == version) {
+            return cached.values;
+        }
+        lock.readLock().lock();
+        try {
+            if (snapshot.version == version) {
+                return snapshot.values;
+            }
+            List<T> values = new ArrayList<>(size);
+            collect(root, 0, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, values);
+            Snapshot<T> rebuilt = new Snapshot<>(version, Collections.unmodifiableList(values));
+            snapshot = rebuilt;
+            return rebuilt.values;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the values snapshot if no write has happened since it was built, or null.
+     */
+    public List<T> cachedValues() {
+        Snapshot<T> cached = snapshot;
+        return cached.version == version ? cached.values : null;
+    }
+
+    public List<T> range(int fromZIndex, int toZIndex, int limit) {
+        lock.readLock().lock();
+        try {
+            List<T> values = new ArrayList<>(Math.min(limit, size));
+            collect(root, 0, fromZIndex, toZIndex, limit, values);
+            return values;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int zIndexOf(Entry<T> entry) {
+        lock.readLock().lock();
+        try {
+            return entry.index != this ? entry.zIndex : absoluteZIndex(entry);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int absoluteZIndex(Entry<T> entry) {
+        int zIndex = entry.zIndex;
+        for (Entry<T> ancestor = entry.parent; ancestor != null; ancestor = ancestor.parent) {
+            zIndex += ancestor.offset;
+        }
+        return zIndex;
+    }
+
+    private boolean occupied(int zIndex) {
+        Entry<T> node = root;
+        int offset = 0;
+        while (node != null) {
+            int nodeZIndex = node.zIndex + offset;
+            if (nodeZIndex == zIndex) {
+                return true;
+            }
+            offset += node.offset;
+            node = nodeZIndex < zIndex ? node.right : node.left;
+        }
+        return false;
+    }
+
+    private int add(Entry<T> entry, int zIndex) {
+        Entry<T>[] parts = split(root, zIndex);
+        int shifted = count(parts[1]);
+        shift(parts[1], 1);
+        link(entry, zIndex);
+        root = detachRoot(merge(merge(parts[0], entry), parts[1]));
+        maxZIndex = size == 0 || maxZIndex < zIndex ? zIndex : maxZIndex + 1;
+        size++;
+        shiftListener.accept(shifted);
+        return shifted;
+    }
+
+    private void collect(Entry<T> node, int offset, int fromZIndex, int toZIndex, int limit, List<T> values) {
+        if (node == null || values.size() >= limit) {
+            return;
+        }
+        int zIndex = node.zIndex + offset;
+        int childOffset = offset + node.offset;
+        if (zIndex >= fromZIndex) {
+            collect(node.left, childOffset, fromZIndex, toZIndex, limit, values);
+        }
+        if (values.size() < limit && zIndex >= fromZIndex && zIndex <= toZIndex) {
+            values.add(copier.copy(node.value, zIndex));
+        }
+        if (zIndex <= toZIndex) {
+            collect(node.right, childOffset, fromZIndex, toZIndex, limit, values);
+        }
+    }
+
+    private void checkDetached(Entry<T> entry) {
+        if (entry.index != null) {
+            throw new IllegalStateException("Entry is already part of a z-order index");
+        }
+    }
+
+    private void link(Entry<T> entry, int zIndex) {
+        entry.index = this;
+        entry.zIndex = zIndex;
+        entry.offset = 0;
+        entry.count = 1;
+        entry.left = null;
+        entry.right = null;
+        entry.parent = null;
+    }
+
+    private void relink(Entry<T> entry, int zIndex) {
+        Entry<T>[] parts = split(root, zIndex);
+        link(entry, zIndex);
+        root = detachRoot(merge(merge(parts[0], entry), parts[1]));
+        maxZIndex = lastZIndex();
+    }
+
+    private void unlink(Entry<T> entry) {
+        Deque<Entry<T>> path = new ArrayDeque<>();
+        for (Entry<T> ancestor = entry.parent; ancestor != null; ancestor = ancestor.parent) {
+            path.push(ancestor);
+        }
+        while (!path.isEmpty()) {
+            pushDown(path.pop());
+        }
+        pushDown(entry);
+
+        Entry<T> replacement = merge(entry.left, entry.right);
+        Entry<T> parent = entry.parent;
+        if (replacement != null) {
+            replacement.parent = parent;
+        }
+        if (parent == null) {
+            root = replacement;
+        } else if (parent.left == entry) {
+            parent.left = replacement;
+        } else {
+            parent.right = replacement;
+        }
+        for (Entry<T> ancestor = parent; ancestor != null; ancestor = ancestor.parent) {
+            recount(ancestor);
+        }
+        entry.left = null;
+        entry.right = null;
+        entry.parent = null;
+    }
+
+    private int lastZIndex() {
+        Entry<T> current = root;
+        int offset = 0;
+        while (current.right != null) {
+            offset += current.offset;
+            current = current.right;
+        }
+        return current.zIndex + offset;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Entry<T>[] split(Entry<T> node, int zIndex) {
+        if (node == null) {
+            return new Entry[]{null, null};
+        }
+        pushDown(node);
+        if (node.zIndex < zIndex) {
+            Entry<T>[] parts = split(node.right, zIndex);
+            setRight(node, parts[0]);
+            parts[0] = detachRoot(node);
+            return parts;
+        } else {
+            Entry<T>[] parts = split(node.left, zIndex);
+            setLeft(node, parts[1]);
+            parts[1] = detachRoot(node);
+            return parts;
+        }
+    }
+
+    private Entry<T> merge(Entry<T> lower, Entry<T> upper) {
+        if (lower == null) {
+            return upper;
+        }
+        if (upper == null) {
+            return lower;
+        }
+        if (lower.priority > upper.priority) {
+            pushDown(lower);
+            setRight(lower, merge(lower.right, upper));
+            return lower;
+        } else {
+            pushDown(upper);
+            setLeft(upper, merge(lower, upper.left));
+            return upper;
+        }
+    }
+
+    private void shift(Entry<T> node, int delta) {
+        if (node != null) {
+            node.zIndex += delta;
+            node.offset += delta;
+        }
+    }
+
+    private void pushDown(Entry<T> node) {
+        if (node.offset != 0) {
+            shift(node.left, node.offset);
+            shift(node.right, node.offset);
+            node.offset = 0;
+        }
+    }
+
+    private void setLeft(Entry<T> node, Entry<T> child) {
+        node.left = child;
+        if (child != null) {
+            child.parent = node;
+        }
+        recount(node);
+    }
+
+    private void setRight(Entry<T> node, Entry<T> child) {
+        node.right = child;
+        if (child != null) {
+            child.parent = node;
+        }
+        recount(node);
+    }
+
+    private void recount(Entry<T> node) {
+        node.count = 1 + count(node.left) + count(node.right);
+    }
+
+    private int count(Entry<T> node) {
+        return node != null ? node.count : 0;
+    }
+
+    private Entry<T> detachRoot(Entry<T> node) {
+        if (node != null) {
+            node.parent = null;
+        }
+        return node;
+    }
+
+    private static final class Snapshot<T> {
+        private final int version;
+        private final List<T> values;
+
+        private Snapshot(int version, List<T> values) {
+            this.version = version;
+            this.values = values;
+        }
+    }
+
+    public static final class Entry<T> {
+        private final T value;
+        private final int priority = ThreadLocalRandom.current().nextInt();
+        private volatile ZOrderIndex<T> index;
+        private Entry<T> left;
+        private Entry<T> right;
+        private Entry<T> parent;
+        private int zIndex;
+        private int offset;
+        private int count;
+
+        public Entry(T value, int zIndex) {
+            this.value = value;
+            this.zIndex = zIndex;
+        }
+
+        public T getValue() {
+            return value;
+        }
+
+        public int getZIndex() {
+            ZOrderIndex<T> index = this.index;
+            return index != null ? index.zIndexOf(this) : zIndex;
+        }
+
+        public int moveOnto(int zIndex) {
+            ZOrderIndex<T> index = this.index;
+            if (index == null) {
+                this.zIndex = zIndex;
+                return 0;
+            }
+            return index.moveOnto(this, zIndex);
+        }
+    }
+
+    @FunctionalInterface
+    public interface Copier<T> {
+        T copy(T value, int zIndex);
+    }
+}
@@ -0,0 +1,106 @@
+package com.tianyupu.widgets;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class AdmissionControlFilterTest {
+    private MeterRegistry registry;
+    private AdmissionControlFilter filter;
+
+    @Before
+    public void setup() {
+        registry = new SimpleMeterRegistry();
+        filter = new AdmissionControlFilter(
+                new ClientRateLimiter(1, 2),
+                "X-Client-Id",
+                new AdmissionQueue(1, 0, 10, TimeUnit.MILLISECONDS),
+                new AdmissionQueue(1, 0, 10, TimeUnit.MILLISECONDS),
+                registry
+        );
+    }
+
+    @Test
+    public void shouldRejectWritesOverTheClientsRateWithRetryAfter() throws Exception {
+        assertThat(send(request("POST", "a")).getStatus(), is(200));
+        assertThat(send(request("POST", "a")).getStatus(), is(200));
+
+        MockHttpServletResponse rejected = send(request("PUT", "a"));
+        assertThat(rejected.getStatus(), is(429));
+        assertThat(rejected.getHeader("Retry-After"), is("1"));
+        assertThat(send(request("POST", "b")).getStatus(), is(200));
+        assertThat(send(request("GET", "a")).getStatus(), is(200));
+        assertThat(registry.get("widgets.admission.rejected").tag("reason", "rate-limited").counter().count(), is(1.0));
+    }
+
+    @Test
+    public void shouldRejectWritesWhenTheWriteQueueIsFullButStillAdmitReads() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<MockHttpServletResponse> running = executor.submit(() -> send(request("POST", "a"), (request, response) -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            started.await();
+
+            MockHttpServletResponse rejected = send(request("DELETE", "b"));
+            assertThat(rejected.getStatus(), is(503));
+            assertThat(rejected.getHeader("Retry-After"), is("1"));
+            assertThat(send(request("GET", "b")).getStatus(), is(200));
+
+            release.countDown();
+            assertThat(running.get().getStatus(), is(200));
+            assertThat(send(request("DELETE", "b")).getStatus(), is(200));
+            assertThat(registry.get("widgets.admission.rejected").tags("kind", "write", "reason", "overloaded").counter().count(), is(1.0));
+            assertThat(registry.get("widgets.admission.rejected").tags("kind", "read", "reason", "overloaded").counter().count(), is(0.0));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldNotQueueChangeStreams() throws Exception {
+        MockHttpServletRequest request = request("GET", "a");
+        request.setRequestURI("/widgets/changes");
+
+        assertThat(filter.shouldNotFilter(request), is(true));
+        assertThat(filter.shouldNotFilter(request("GET", "a")), is(false));
+    }
+
+    private MockHttpServletRequest request(String method, String client) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, "/widget/1");
+        request.addHeader("X-Client-Id", client);
+        return request;
+    }
+
+    private MockHttpServletResponse send(MockHttpServletRequest request) throws Exception {
+        return send(request, new MockFilterChain());
+    }
+
+    private MockHttpServletResponse send(MockHttpServletRequest request, FilterChain chain) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+}
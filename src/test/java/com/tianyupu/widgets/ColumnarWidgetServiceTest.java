@@ -0,0 +1,172 @@
+package com.tianyupu.widgets;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.util.Lists.newArrayList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class ColumnarWidgetServiceTest {
+    private ColumnarWidgetService columnarWidgetService;
+
+    @Before
+    public void setup() {
+        columnarWidgetService = new ColumnarWidgetService();
+    }
+
+    @Test
+    public void shouldShiftHigherWidgetsAndStackWidgetsWithoutAZIndexOnTop() {
+        Widget first = columnarWidgetService.createWidget(widgetRequest(0, 0, 2));
+        Widget second = columnarWidgetService.createWidget(widgetRequest(0, 0, 6));
+        Widget third = columnarWidgetService.createWidget(widgetRequest(0, 0, 2));
+        Widget top = columnarWidgetService.createWidget(widgetRequest(0, 0, null));
+
+        assertThat(third.getZIndex(), is(2));
+        assertThat(columnarWidgetService.getWidgetById(first.getId()).getZIndex(), is(3));
+        assertThat(columnarWidgetService.getWidgetById(second.getId()).getZIndex(), is(7));
+        assertThat(top.getZIndex(), is(8));
+        assertThat(ids(columnarWidgetService.getAllWidgets()),
+                is(newArrayList(third.getId(), first.getId(), second.getId(), top.getId())));
+    }
+
+    @Test
+    public void shouldUpdateAndDeleteWidgetsCheckingTheirVersion() {
+        Widget widget = columnarWidgetService.createWidget(widgetRequest(10, 20, 5));
+
+        Widget updated = columnarWidgetService.updateWidgetById(widget.getId(), widgetRequest(30, 40, 1), WidgetPrecondition.version(1L));
+        Widget unchanged = columnarWidgetService.updateWidgetById(widget.getId(), widgetRequest(30, 40, 1), WidgetPrecondition.version(2L));
+
+        assertThat(updated.getX(), is(30));
+        assertThat(updated.getZIndex(), is(1));
+        assertThat(updated.getVersion(), is(2L));
+        assertThat(unchanged, is(updated));
+        assertThat(columnarWidgetService.getWidgetsInArea(0, 0, 300, 300), is(newArrayList(updated)));
+        boolean conflict = false;
+        try {
+            columnarWidgetService.deleteWidgetById(widget.getId(), WidgetPrecondition.version(1L));
+        } catch (WidgetVersionConflictException e) {
+            conflict = true;
+        }
+        assertThat(conflict, is(true));
+        assertThat(columnarWidgetService.getWidgetCount(), is(1));
+        assertThat(columnarWidgetService.deleteWidgetById(widget.getId(), WidgetPrecondition.version(2L)), is(updated));
+        assertThat(columnarWidgetService.getWidgetById(widget.getId()) == null, is(true));
+        assertThat(columnarWidgetService.getWidgetsInArea(0, 0, 300, 300).isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldListOnlyTheChangesAfterTheGivenSequence() {
+        columnarWidgetService.createWidget(widgetRequest(0, 0, 1));
+        Widget updated = columnarWidgetService.createWidget(widgetRequest(0, 0, 2));
+        Widget deleted = columnarWidgetService.createWidget(widgetRequest(0, 0, 3));
+        long since = columnarWidgetService.getWidgetsChangedSince(0).getSequence();
+
+        columnarWidgetService.updateWidgetById(updated.getId(), widgetRequest(50, 50, 2));
+        columnarWidgetService.deleteWidgetById(deleted.getId());
+        Widget created = columnarWidgetService.createWidget(widgetRequest(0, 0, 1));
+        WidgetDelta delta = columnarWidgetService.getWidgetsChangedSince(since);
+
+        assertThat(delta.isReset(), is(false));
+        assertThat(delta.getSequence(), is(since + 4));
+        assertThat(delta.getShifts(), is(newArrayList(1)));
+        assertThat(ids(delta.getWidgets()), is(newArrayList(updated.getId(), created.getId())));
+        assertThat(delta.getWidgets().get(0).getZIndex(), is(3));
+        assertThat(delta.getDeleted(), is(newArrayList(deleted.getId())));
+    }
+
+    @Test
+    public void shouldRecordShiftsOnlyWhenAWidgetIsMovedOntoATakenZIndex() {
+        List<Integer> shifts = new ArrayList<>();
+        Widget first = columnarWidgetService.createWidget(widgetRequest(0, 0, 1));
+        columnarWidgetService.createWidget(widgetRequest(0, 0, 2));
+        columnarWidgetService.onZIndexShift(shifts::add);
+
+        columnarWidgetService.updateWidgetById(first.getId(), widgetRequest(0, 0, 10));
+        assertThat(shifts.isEmpty(), is(true));
+
+        columnarWidgetService.updateWidgetById(first.getId(), widgetRequest(0, 0, 2));
+        assertThat(shifts, is(newArrayList(1)));
+    }
+
+    @Test
+    public void shouldAnswerQueriesLikeTheDefaultStore() {
+        DefaultWidgetService defaultWidgetService = new DefaultWidgetService();
+        Random random = new Random(3);
+        List<Long> ids = new ArrayList<>();
+
+        for (int i = 0; i < 5000; i++) {
+            int operation = random.nextInt(10);
+            if (operation < 5 || ids.isEmpty()) {
+                WidgetRequest widgetRequest = randomRequest(random, random.nextBoolean() ? null : random.nextInt(200) - 100);
+                long id = columnarWidgetService.createWidget(widgetRequest).getId();
+                assertThat(defaultWidgetService.createWidget(widgetRequest).getId(), is(id));
+                ids.add(id);
+            } else if (operation < 8) {
+                long id = ids.get(random.nextInt(ids.size()));
+                WidgetRequest widgetRequest = randomRequest(random, random.nextInt(200) - 100);
+                assertThat(snapshot(columnarWidgetService.updateWidgetById(id, widgetRequest)),
+                        is(snapshot(defaultWidgetService.updateWidgetById(id, widgetRequest))));
+            } else {
+                long id = ids.remove(random.nextInt(ids.size()));
+                columnarWidgetService.deleteWidgetById(id);
+                defaultWidgetService.deleteWidgetById(id);
+            }
+
+            if (i % 500 == 0) {
+                assertThat(snapshots(columnarWidgetService.getAllWidgets()),
+                        is(snapshots(defaultWidgetService.getAllWidgets())));
+                assertThat(snapshots(columnarWidgetService.getWidgetsByZIndex(-20, 40, 25)),
+                        is(snapshots(defaultWidgetService.getWidgetsByZIndex(-20, 40, 25))));
+                assertThat(sorted(snapshots(columnarWidgetService.getWidgetsInArea(100, 100, 700, 500))),
+                        is(sorted(snapshots(defaultWidgetService.getWidgetsInArea(100, 100, 700, 500)))));
+                int x = random.nextInt(1100);
+                int y = random.nextInt(1100);
+                assertThat(snapshots(columnarWidgetService.getWidgetsAt(x, y, Integer.MAX_VALUE)),
+                        is(snapshots(defaultWidgetService.getWidgetsAt(x, y, Integer.MAX_VALUE))));
+            }
+        }
+        assertThat(columnarWidgetService.getWidgetCount(), is(defaultWidgetService.getWidgetCount()));
+    }
+
+    private static WidgetRequest widgetRequest(int x, int y, Integer zIndex) {
+        WidgetRequest widgetRequest = new WidgetRequest();
+        widgetRequest.setX(x);
+        widgetRequest.setY(y);
+        widgetRequest.setWidth(100);
+        widgetRequest.setHeight(200);
+        widgetRequest.setZIndex(zIndex);
+        return widgetRequest;
+    }
+
+    private static WidgetRequest randomRequest(Random random, Integer zIndex) {
+        WidgetRequest widgetRequest = widgetRequest(random.nextInt(1000), random.nextInt(1000), zIndex);
+        widgetRequest.setWidth(random.nextInt(100));
+        widgetRequest.setHeight(random.nextInt(100));
+        return widgetRequest;
+    }
+
+    private static List<Long> ids(List<Widget> widgets) {
+        return widgets.stream().map(Widget::getId).collect(Collectors.toList());
+    }
+
+    private static List<String> snapshots(List<Widget> widgets) {
+        return widgets.stream().map(ColumnarWidgetServiceTest::snapshot).collect(Collectors.toList());
+    }
+
+    private static List<String> sorted(List<String> snapshots) {
+        snapshots.sort(Comparator.naturalOrder());
+        return snapshots;
+    }
+
+    private static String snapshot(Widget widget) {
+        return widget.getId() + ":" + widget.getX() + "," + widget.getY() + "," + widget.getWidth() + ","
+                + widget.getHeight() + "," + widget.getZIndex() + ",v" + widget.getVersion();
+    }
+}
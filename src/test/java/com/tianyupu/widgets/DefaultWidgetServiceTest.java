@@ -5,7 +5,9 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.util.Lists.newArrayList;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -96,6 +98,42 @@ public class DefaultWidgetServiceTest {
         assertThat(updatedWidget.getZIndex(), is(1));
     }
 
+    @Test
+    public void shouldIncrementTheVersionWhenAWidgetIsUpdated() {
+        Widget createdWidget = defaultWidgetService.createWidget(defaultWidgetRequest());
+
+        Widget updatedWidget = defaultWidgetService.updateWidgetById(1L, widgetRequestAt(1, 2, 3, 4, 5), WidgetPrecondition.version(1L));
+
+        assertThat(createdWidget.getVersion(), is(2L));
+        assertThat(updatedWidget.getX(), is(1));
+    }
+
+    @Test(expected = WidgetVersionConflictException.class)
+    public void shouldRejectAnUpdateForAStaleVersion() {
+        defaultWidgetService.createWidget(defaultWidgetRequest());
+        defaultWidgetService.updateWidgetById(1L, widgetRequestAt(1, 2, 3, 4, 5), WidgetPrecondition.version(1L));
+
+        defaultWidgetService.updateWidgetById(1L, widgetRequestAt(6, 7, 8, 9, 10), WidgetPrecondition.version(1L));
+    }
+
+    @Test
+    public void shouldKeepTheWidgetWhenADeleteIsRejectedForAStaleVersion() {
+        defaultWidgetService.createWidget(defaultWidgetRequest());
+
+        try {
+            defaultWidgetService.deleteWidgetById(1L, WidgetPrecondition.version(7L));
+        } catch (WidgetVersionConflictException e) {
+            assertThat(defaultWidgetService.getWidgetById(1L).getId(), is(1L));
+            return;
+        }
+        throw new AssertionError("Expected a version conflict");
+    }
+
+    @Test
+    public void shouldReturnNullWhenUpdatingANonexistentWidget() {
+        assertThat(defaultWidgetService.updateWidgetById(1L, defaultWidgetRequest()) == null, is(true));
+    }
+
     @Test
     public void shouldRemoveWidgetWithGivenId() {
         defaultWidgetService.createWidget(defaultWidgetRequest());
@@ -116,6 +154,210 @@ public class DefaultWidgetServiceTest {
         assertThat(widgetList, is(newArrayList(widget3, widget2, widget1)));
     }
 
+    @Test
+    public void shouldReturnOnlyTheRequestedZIndexWindowInAscendingOrder() {
+        defaultWidgetService.createWidget(defaultWidgetRequestWithZIndex(1));
+        Widget widget2 = defaultWidgetService.createWidget(defaultWidgetRequestWithZIndex(5));
+        Widget widget3 = defaultWidgetService.createWidget(defaultWidgetRequestWithZIndex(9));
+        defaultWidgetService.createWidget(defaultWidgetRequestWithZIndex(20));
+
+        List<Widget> widgetList = defaultWidgetService.getWidgetsByZIndex(2, 15, 10);
+
+        assertThat(widgetList, is(newArrayList(widget2, widget3)));
+    }
+
+    @Test
+    public void shouldLimitTheNumberOfWidgetsReturnedForAZIndexWindow() {
+        Widget widget1 = defaultWidgetService.createWidget(defaultWidgetRequestWithZIndex(1));
+        Widget widget2 = defaultWidgetService.createWidget(defaultWidgetRequestWithZIndex(5));
+        defaultWidgetService.createWidget(defaultWidgetRequestWithZIndex(9));
+
+        List<Widget> widgetList = defaultWidgetService.getWidgetsByZIndex(Integer.MIN_VALUE, Integer.MAX_VALUE, 2);
+
+        assertThat(widgetList, is(newArrayList(widget1, widget2)));
+    }
+
+    @Test
+    public void shouldReturnWidgetsFullyInsideTheAreaSortedByZIndex() {
+        Widget widget1 = defaultWidgetService.createWidget(widgetRequestAt(0, 0, 100, 100, 3));
+        Widget widget2 = defaultWidgetService.createWidget(widgetRequestAt(0, 50, 100, 100, 1));
+        defaultWidgetService.createWidget(widgetRequestAt(50, 50, 100, 100, 2));
+
+        List<Widget> widgetList = defaultWidgetService.getWidgetsInArea(0, 0, 100, 150);
+
+        assertThat(widgetList, is(newArrayList(widget2, widget1)));
+    }
+
+    @Test
+    public void shouldKeepAreaQueriesInSyncWithUpdatesAndDeletes() {
+        defaultWidgetService.createWidget(widgetRequestAt(0, 0, 10, 10, 1));
+        defaultWidgetService.createWidget(widgetRequestAt(0, 0, 10, 10, 2));
+
+        defaultWidgetService.updateWidgetById(1L, widgetRequestAt(500, 500, 10, 10, 1));
+        defaultWidgetService.deleteWidgetById(2L);
+
+        assertThat(defaultWidgetService.getWidgetsInArea(0, 0, 100, 100).isEmpty(), is(true));
+        assertThat(defaultWidgetService.getWidgetsInArea(500, 500, 510, 510).size(), is(1));
+    }
+
+    @Test
+    public void shouldReturnTheWidgetsCoveringAPointTopmostFirst() {
+        Widget bottom = defaultWidgetService.createWidget(widgetRequestAt(0, 0, 100, 100, 1));
+        Widget top = defaultWidgetService.createWidget(widgetRequestAt(50, 50, 100, 100, 2));
+        Widget background = defaultWidgetService.createWidget(widgetRequestAt(-10000, -10000, 20000, 20000, 0));
+        defaultWidgetService.createWidget(widgetRequestAt(500, 500, 10, 10, 1));
+
+        assertThat(ids(defaultWidgetService.getWidgetsAt(60, 60, Integer.MAX_VALUE)),
+                is(newArrayList(top.getId(), bottom.getId(), background.getId())));
+        assertThat(defaultWidgetService.getWidgetsAt(60, 60, 1).get(0).getZIndex(), is(4));
+
+        defaultWidgetService.updateWidgetById(top.getId(), widgetRequestAt(200, 200, 100, 100, 3));
+        defaultWidgetService.deleteWidgetById(bottom.getId());
+
+        assertThat(ids(defaultWidgetService.getWidgetsAt(60, 60, Integer.MAX_VALUE)),
+                is(newArrayList(background.getId())));
+    }
+
+    @Test
+    public void shouldApplyBatchOperationsInOrder() {
+        defaultWidgetService.createWidget(defaultWidgetRequestWithZIndex(1));
+
+        List<WidgetBatchResult> results = defaultWidgetService.applyBatch(newArrayList(
+                batchOperation(WidgetBatchOperation.Type.CREATE, null, defaultWidgetRequestWithZIndex(1)),
+                batchOperation(WidgetBatchOperation.Type.CREATE, null, defaultWidgetRequestWithZIndex(null)),
+                batchOperation(WidgetBatchOperation.Type.UPDATE, 1L, widgetRequestAt(1, 2, 3, 4, 50)),
+                batchOperation(WidgetBatchOperation.Type.DELETE, 42L, null)
+        ));
+
+        assertThat(results.get(0).getOutcome(), is(WidgetBatchResult.Outcome.CREATED));
+        assertThat(results.get(0).getWidget().getZIndex(), is(1));
+        assertThat(results.get(1).getOutcome(), is(WidgetBatchResult.Outcome.CREATED));
+        assertThat(results.get(1).getWidget().getZIndex(), is(3));
+        assertThat(results.get(2).getOutcome(), is(WidgetBatchResult.Outcome.UPDATED));
+        assertThat(results.get(3).getOutcome(), is(WidgetBatchResult.Outcome.NOT_FOUND));
+        assertThat(defaultWidgetService.getAllWidgets(),
+                is(newArrayList(results.get(0).getWidget(), results.get(1).getWidget(), results.get(2).getWidget())));
+    }
+
+    @Test
+    public void shouldReportConflictsForStaleBatchOperations() {
+        defaultWidgetService.createWidget(defaultWidgetRequest());
+        WidgetBatchOperation staleDelete = batchOperation(WidgetBatchOperation.Type.DELETE, 1L, null);
+        staleDelete.setVersion(5L);
+
+        List<WidgetBatchResult> results = defaultWidgetService.applyBatch(newArrayList(staleDelete));
+
+        assertThat(results.get(0).getOutcome(), is(WidgetBatchResult.Outcome.CONFLICT));
+        assertThat(defaultWidgetService.getWidgetById(1L).getId(), is(1L));
+    }
+
+    private WidgetBatchOperation batchOperation(WidgetBatchOperation.Type type, Long id, WidgetRequest widgetRequest) {
+        WidgetBatchOperation operation = new WidgetBatchOperation();
+        operation.setType(type);
+        operation.setId(id);
+        operation.setWidget(widgetRequest);
+        return operation;
+    }
+
+    private WidgetRequest widgetRequestAt(int x, int y, int width, int height, int zIndex) {
+        WidgetRequest widgetRequest = new WidgetRequest();
+        widgetRequest.setX(x);
+        widgetRequest.setY(y);
+        widgetRequest.setWidth(width);
+        widgetRequest.setHeight(height);
+        widgetRequest.setZIndex(zIndex);
+
+        return widgetRequest;
+    }
+
+    private static List<Long> ids(List<Widget> widgets) {
+        return widgets.stream().map(Widget::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    public void shouldPublishASequencedChangeForEveryMutationIncludingShifts() {
+        long start = defaultWidgetService.getChangeFeed().lastSequence();
+        defaultWidgetService.createWidget(defaultWidgetRequestWithZIndex(1));
+        defaultWidgetService.createWidget(defaultWidgetRequestWithZIndex(1));
+        defaultWidgetService.createWidget(defaultWidgetRequestWithZIndex(7));
+        defaultWidgetService.updateWidgetById(1, defaultWidgetRequestWithZIndex(4));
+        defaultWidgetService.deleteWidgetById(2);
+
+        List<WidgetChange> changes = defaultWidgetService.getChangeFeed()
+                .subscribe(start)
+                .take(6)
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertThat(changes.stream().map(WidgetChange::getType).collect(Collectors.toList()), is(newArrayList(
+                WidgetChange.Type.CREATED,
+                WidgetChange.Type.SHIFTED,
+                WidgetChange.Type.CREATED,
+                WidgetChange.Type.CREATED,
+                WidgetChange.Type.UPDATED,
+                WidgetChange.Type.DELETED
+        )));
+        assertThat(changes.get(5).getSequence(), is(start + 6));
+        assertThat(changes.get(0).getWidget().getZIndex(), is(1));
+        assertThat(changes.get(1).getFromZIndex(), is(1));
+        assertThat(changes.get(4).getWidget().getZIndex(), is(4));
+        assertThat(changes.get(4).getWidget().getVersion(), is(2L));
+    }
+
+    @Test
+    public void shouldListOnlyTheChangesAfterTheGivenSequence() {
+        Widget unchanged = defaultWidgetService.createWidget(defaultWidgetRequestWithZIndex(1));
+        Widget updated = defaultWidgetService.createWidget(defaultWidgetRequestWithZIndex(2));
+        Widget deleted = defaultWidgetService.createWidget(defaultWidgetRequestWithZIndex(3));
+        long since = defaultWidgetService.getWidgetsChangedSince(0).getSequence();
+
+        defaultWidgetService.updateWidgetById(updated.getId(), widgetRequestAt(50, 50, 10, 10, 2));
+        defaultWidgetService.deleteWidgetById(deleted.getId());
+        Widget created = defaultWidgetService.createWidget(defaultWidgetRequestWithZIndex(1));
+        WidgetDelta delta = defaultWidgetService.getWidgetsChangedSince(since);
+
+        assertThat(delta.isReset(), is(false));
+        assertThat(delta.getSequence(), is(since + 4));
+        assertThat(delta.getShifts(), is(newArrayList(1)));
+        assertThat(delta.getWidgets(), is(newArrayList(updated, created)));
+        assertThat(delta.getDeleted(), is(newArrayList(deleted.getId())));
+        assertThat(unchanged.getZIndex(), is(2));
+        assertThat(updated.getZIndex(), is(3));
+    }
+
+    @Test
+    public void shouldShiftHigherWidgetsWhenAWidgetIsMovedOntoATakenZIndex() {
+        Widget bottom = defaultWidgetService.createWidget(defaultWidgetRequestWithZIndex(1));
+        Widget middle = defaultWidgetService.createWidget(defaultWidgetRequestWithZIndex(2));
+        Widget top = defaultWidgetService.createWidget(defaultWidgetRequestWithZIndex(3));
+        long since = defaultWidgetService.getWidgetsChangedSince(0).getSequence();
+
+        defaultWidgetService.updateWidgetById(top.getId(), defaultWidgetRequestWithZIndex(1));
+        WidgetDelta delta = defaultWidgetService.getWidgetsChangedSince(since);
+
+        assertThat(top.getZIndex(), is(1));
+        assertThat(bottom.getZIndex(), is(2));
+        assertThat(middle.getZIndex(), is(3));
+        assertThat(delta.getShifts(), is(newArrayList(1)));
+        assertThat(delta.getWidgets().get(0).getZIndex(), is(1));
+        assertThat(defaultWidgetService.getAllWidgets(), is(newArrayList(top, bottom, middle)));
+    }
+
+    @Test
+    public void shouldResetDeltasFromBeforeTheStoreStarted() {
+        defaultWidgetService.createWidget(defaultWidgetRequestWithZIndex(1));
+        defaultWidgetService.createWidget(defaultWidgetRequestWithZIndex(2));
+        long lastSequence = defaultWidgetService.getChangeFeed().lastSequence();
+
+        WidgetDelta fromScratch = defaultWidgetService.getWidgetsChangedSince(0);
+        WidgetDelta fromTheFuture = defaultWidgetService.getWidgetsChangedSince(lastSequence + 1);
+
+        assertThat(fromScratch.isReset(), is(true));
+        assertThat(fromScratch.getSequence(), is(lastSequence));
+        assertThat(fromScratch.getWidgets(), is(defaultWidgetService.getAllWidgets()));
+        assertThat(fromTheFuture.isReset(), is(true));
+    }
+
     private WidgetRequest defaultWidgetRequest() {
         WidgetRequest widgetRequest = new WidgetRequest();
         widgetRequest.setX(10);
@@ -0,0 +1,144 @@
+package com.tianyupu.widgets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class DurableWidgetServiceTest {
+    private static final int SEGMENT_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path directory;
+    private DurableWidgetService durableWidgetService;
+
+    @Before
+    public void setup() {
+        directory = temporaryFolder.getRoot().toPath();
+        durableWidgetService = new DurableWidgetService(directory, SEGMENT_SIZE, Long.MAX_VALUE);
+    }
+
+    @After
+    public void tearDown() {
+        durableWidgetService.close();
+    }
+
+    @Test
+    public void shouldRecoverWidgetsAndZOrderFromTheLogAfterARestart() {
+        durableWidgetService.createWidget(widgetRequest(1, 5));
+        durableWidgetService.createWidget(widgetRequest(2, 5));
+        durableWidgetService.createWidget(widgetRequest(3, null));
+        durableWidgetService.updateWidgetById(2L, widgetRequest(20, 50));
+        durableWidgetService.deleteWidgetById(3L);
+        String before = describe(durableWidgetService.getAllWidgets());
+
+        restart();
+
+        assertThat(describe(durableWidgetService.getAllWidgets()), is(before));
+        assertThat(durableWidgetService.getWidgetById(2L).getVersion(), is(2L));
+        assertThat(durableWidgetService.createWidget(widgetRequest(4, 1)).getId(), is(4L));
+    }
+
+    @Test
+    public void shouldRecoverABatchThatShiftsAWidgetItMovedEarlier() {
+        durableWidgetService.createWidget(widgetRequest(1, 1));
+        durableWidgetService.createWidget(widgetRequest(2, 2));
+        durableWidgetService.applyBatch(Arrays.asList(
+                operation(WidgetBatchOperation.Type.UPDATE, 1L, widgetRequest(1, 10)),
+                operation(WidgetBatchOperation.Type.CREATE, null, widgetRequest(3, 5))));
+        String before = describe(durableWidgetService.getAllWidgets());
+
+        restart();
+
+        assertThat(describe(durableWidgetService.getAllWidgets()), is(before));
+        assertThat(durableWidgetService.getWidgetById(1L).getZIndex(), is(11));
+        assertThat(durableWidgetService.getWidgetById(2L).getZIndex(), is(2));
+        assertThat(durableWidgetService.getWidgetById(3L).getZIndex(), is(5));
+    }
+
+    @Test
+    public void shouldRecoverFromASnapshotAndTheLogWrittenAfterIt() throws Exception {
+        for (int i = 0; i < 200; i++) {
+            durableWidgetService.createWidget(widgetRequest(i, i % 7));
+        }
+        durableWidgetService.snapshot();
+        durableWidgetService.deleteWidgetById(10L);
+        durableWidgetService.createWidget(widgetRequest(1000, 3));
+        String before = describe(durableWidgetService.getAllWidgets());
+
+        restart();
+
+        assertThat(describe(durableWidgetService.getAllWidgets()), is(before));
+        assertThat(durableWidgetService.createWidget(widgetRequest(4, 1)).getId(), is(202L));
+        assertThat(files("snapshot-").size(), is(1));
+    }
+
+    @Test
+    public void shouldIgnoreATornRecordAtTheEndOfTheLog() throws Exception {
+        durableWidgetService.createWidget(widgetRequest(1, 1));
+        durableWidgetService.createWidget(widgetRequest(2, 2));
+        durableWidgetService.close();
+
+        Path lastSegment = files("wal-").get(files("wal-").size() - 1);
+        try (RandomAccessFile segment = new RandomAccessFile(lastSegment.toFile(), "rw")) {
+            segment.seek(90);
+            segment.write(0x7f);
+        }
+        durableWidgetService = new DurableWidgetService(directory, SEGMENT_SIZE, Long.MAX_VALUE);
+
+        assertThat(durableWidgetService.getAllWidgets().size(), is(1));
+        assertThat(durableWidgetService.createWidget(widgetRequest(3, 3)).getId(), is(2L));
+        restart();
+        assertThat(durableWidgetService.getAllWidgets().size(), is(2));
+    }
+
+    private void restart() {
+        durableWidgetService.close();
+        durableWidgetService = new DurableWidgetService(directory, SEGMENT_SIZE, Long.MAX_VALUE);
+    }
+
+    private List<Path> files(String prefix) throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(path -> path.getFileName().toString().startsWith(prefix))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private String describe(List<Widget> widgets) {
+        return widgets.stream().map(Widget::toString).collect(Collectors.joining("\n"));
+    }
+
+    private WidgetBatchOperation operation(WidgetBatchOperation.Type type, Long id, WidgetRequest widget) {
+        WidgetBatchOperation operation = new WidgetBatchOperation();
+        operation.setType(type);
+        operation.setId(id);
+        operation.setWidget(widget);
+        return operation;
+    }
+
+    private WidgetRequest widgetRequest(int x, Integer zIndex) {
+        WidgetRequest widgetRequest = new WidgetRequest();
+        widgetRequest.setX(x);
+        widgetRequest.setY(20);
+        widgetRequest.setWidth(100);
+        widgetRequest.setHeight(200);
+        widgetRequest.setZIndex(zIndex);
+        return widgetRequest;
+    }
+}
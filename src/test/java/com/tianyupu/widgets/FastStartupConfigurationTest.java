@@ -0,0 +1,47 @@
+package com.tianyupu.widgets;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("fast-startup")
+public class FastStartupConfigurationTest {
+    @Autowired
+    private ConfigurableApplicationContext context;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    public void shouldCreateOnlyTheBoardsEagerlyAndTheRestOnFirstUse() throws Exception {
+        assertThat(context.getBeanFactory().getBeanDefinition("widgetBoards").isLazyInit(), is(false));
+        assertThat(context.getBeanFactory().getBeanDefinition("widgetResponseCache").isLazyInit(), is(true));
+        assertThat(context.getBeanFactory().containsSingleton("widgetBoards"), is(true));
+
+        mockMvc.perform(post("/widget").contentType(APPLICATION_JSON).content("{ \"x\": 1, \"y\": 2, \"width\": 3, \"height\": 4 }"))
+                .andDo(print())
+                .andExpect(status().isCreated());
+        mockMvc.perform(get("/widgets"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].width").value(3));
+    }
+}
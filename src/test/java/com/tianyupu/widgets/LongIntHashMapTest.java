@@ -0,0 +1,44 @@
+package com.tianyupu.widgets;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class LongIntHashMapTest {
+
+    @Test
+    public void shouldBehaveLikeAHashMapThroughGrowthAndRemovals() {
+        LongIntHashMap map = new LongIntHashMap();
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(11);
+
+        for (int i = 0; i < 200_000; i++) {
+            long key = random.nextInt(20_000) - 10_000L;
+            if (random.nextInt(3) == 0) {
+                assertThat(map.remove(key), is(expected.getOrDefault(key, LongIntHashMap.MISSING)));
+                expected.remove(key);
+            } else {
+                Integer previous = expected.put(key, i);
+                assertThat(map.put(key, i), is(previous != null ? previous : LongIntHashMap.MISSING));
+            }
+        }
+
+        assertThat(map.size(), is(expected.size()));
+        for (long key = -10_000; key < 10_000; key++) {
+            assertThat(map.get(key), is(expected.getOrDefault(key, LongIntHashMap.MISSING)));
+        }
+        int[] sum = new int[1];
+        map.forEachValue(value -> sum[0] += value);
+        assertThat(sum[0], is(expected.values().stream().mapToInt(Integer::intValue).sum()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectTheReservedKey() {
+        new LongIntHashMap().put(Long.MIN_VALUE, 1);
+    }
+}
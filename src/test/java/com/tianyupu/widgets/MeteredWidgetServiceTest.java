@@ -0,0 +1,59 @@
+package com.tianyupu.widgets;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class MeteredWidgetServiceTest {
+    private MeterRegistry registry;
+    private WidgetService widgetService;
+
+    @Before
+    public void setup() {
+        registry = new SimpleMeterRegistry();
+        widgetService = new MeteredWidgetService(new DefaultWidgetService(), registry, WidgetBoards.DEFAULT_BOARD);
+    }
+
+    @Test
+    public void shouldTimeEachOperationSeparately() {
+        widgetService.createWidget(widgetRequest(1));
+        widgetService.createWidget(widgetRequest(2));
+        widgetService.getWidgetById(1);
+
+        assertThat(registry.get("widgets.service").tag("operation", "create").timer().count(), is(2L));
+        assertThat(registry.get("widgets.service").tag("operation", "get").timer().count(), is(1L));
+        assertThat(registry.get("widgets.service").tag("operation", "delete").timer().count(), is(0L));
+    }
+
+    @Test
+    public void shouldRecordStoreSizeAndShiftedWidgets() {
+        List<Integer> shifts = new ArrayList<>();
+        widgetService.onZIndexShift(shifts::add);
+        widgetService.createWidget(widgetRequest(1));
+        widgetService.createWidget(widgetRequest(2));
+        widgetService.createWidget(widgetRequest(1));
+
+        assertThat(registry.get("widgets.store.size").tag("board", WidgetBoards.DEFAULT_BOARD).gauge().value(), is(3.0));
+        assertThat(registry.get("widgets.zindex.shifted").summary().count(), is(3L));
+        assertThat(registry.get("widgets.zindex.shifted").summary().totalAmount(), is(2.0));
+        assertThat(shifts, is(Arrays.asList(0, 0, 2)));
+    }
+
+    private WidgetRequest widgetRequest(int zIndex) {
+        WidgetRequest widgetRequest = new WidgetRequest();
+        widgetRequest.setX(0);
+        widgetRequest.setY(0);
+        widgetRequest.setWidth(10);
+        widgetRequest.setHeight(10);
+        widgetRequest.setZIndex(zIndex);
+        return widgetRequest;
+    }
+}
@@ -0,0 +1,213 @@
+package com.tianyupu.widgets;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.StringContains.containsString;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.test.annotation.DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "spring.main.web-application-type=reactive")
+@AutoConfigureWebTestClient
+@DirtiesContext(classMode = AFTER_EACH_TEST_METHOD)
+public class ReactiveWidgetHandlerTest {
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Test
+    public void shouldCreateAndRetrieveAWidget() {
+        createWidget(10, 5);
+
+        webTestClient.get().uri("/widget/1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"1.5\"")
+                .expectBody()
+                .jsonPath("$.x").isEqualTo(10)
+                .jsonPath("$.zindex").isEqualTo(5);
+        webTestClient.get().uri("/widget/1")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"1.5\"")
+                .exchange()
+                .expectStatus().isNotModified();
+    }
+
+    @Test
+    public void shouldReturnBadRequestWhenCreatingAWidgetIfTheSpecificationIsMissingRequiredFields() {
+        webTestClient.post().uri("/widget")
+                .contentType(APPLICATION_JSON)
+                .syncBody("{ \"x\": 10, \"height\": 100 }")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    public void shouldStreamWidgetsAsNewlineDelimitedJsonInZIndexOrder() {
+        createWidget(10, 5);
+        createWidget(20, 1);
+
+        String body = webTestClient.get().uri("/widgets")
+                .accept(ReactiveWidgetHandler.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(ReactiveWidgetHandler.APPLICATION_NDJSON)
+                .expectBody(String.class)
+                .returnResult()
+                .getResponseBody();
+
+        String[] lines = body.trim().split("\n");
+        assertThat(lines.length, is(2));
+        assertThat(lines[0], containsString("\"x\":20"));
+        assertThat(lines[1], containsString("\"x\":10"));
+    }
+
+    @Test
+    public void shouldReturnWidgetsAsSmileWhenRequested() throws Exception {
+        createWidget(10, 5);
+
+        byte[] body = webTestClient.get().uri("/widgets")
+                .accept(ReactiveWidgetHandler.APPLICATION_SMILE)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(ReactiveWidgetHandler.APPLICATION_SMILE)
+                .expectBody()
+                .returnResult()
+                .getResponseBody();
+
+        JsonNode widgets = new ObjectMapper(new SmileFactory()).readTree(body);
+        assertThat(widgets.size(), is(1));
+        assertThat(widgets.get(0).get("x").asInt(), is(10));
+    }
+
+    @Test
+    public void shouldReturnAJsonArrayAndNextLinkForAFullPage() {
+        createWidget(10, 1);
+        createWidget(20, 2);
+        createWidget(30, 3);
+
+        webTestClient.get().uri("/widgets?limit=2")
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueMatches(HttpHeaders.LINK, "<.*/widgets\\?limit=2&after=2>; rel=\"next\"")
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[1].zindex").isEqualTo(2);
+    }
+
+    @Test
+    public void shouldReturnTheWidgetsCoveringAPointTopmostFirst() {
+        createWidget(10, 1);
+        createWidget(100, 2);
+
+        webTestClient.get().uri("/widgets/at?x=150&y=50")
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].x").isEqualTo(100)
+                .jsonPath("$[1].x").isEqualTo(10);
+        webTestClient.get().uri("/widgets/at?x=150")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    public void shouldReturnPreconditionFailedWhenUpdatingAStaleVersion() {
+        createWidget(10, 5);
+        String updateRequestBody = "{ \"x\": 15, \"y\": 20, \"width\": 200, \"height\": 100, \"zindex\": 5 }";
+
+        webTestClient.put().uri("/widget/1")
+                .contentType(APPLICATION_JSON)
+                .header(HttpHeaders.IF_MATCH, "\"1.5\"")
+                .syncBody(updateRequestBody)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"2.5\"");
+        webTestClient.delete().uri("/widget/1")
+                .header(HttpHeaders.IF_MATCH, "\"1.5\"")
+                .exchange()
+                .expectStatus().isEqualTo(412);
+        webTestClient.delete().uri("/widget/2")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    public void shouldStreamChangesAsServerSentEventsFromTheGivenSequence() {
+        createWidget(10, 5);
+        long sequence = webTestClient.get().uri("/widgets?since=0")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(JsonNode.class)
+                .returnResult()
+                .getResponseBody()
+                .get("sequence")
+                .asLong();
+        createWidget(20, 5);
+
+        Flux<String> events = webTestClient.get().uri("/widgets/changes?since=" + sequence)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(String.class)
+                .getResponseBody();
+
+        List<String> data = events.take(2).collectList().block(Duration.ofSeconds(5));
+        assertThat(data.get(0), containsString("\"type\":\"SHIFTED\""));
+        assertThat(data.get(1), containsString("\"type\":\"CREATED\""));
+        assertThat(data.get(1), containsString("\"x\":20"));
+    }
+
+    @Test
+    public void shouldKeepWidgetsOnSeparateBoards() {
+        createWidget(10, 5);
+        webTestClient.post().uri("/boards/team-a/widget")
+                .contentType(APPLICATION_JSON)
+                .syncBody("{ \"x\": 30, \"y\": 20, \"width\": 200, \"height\": 100, \"zindex\": 5 }")
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody()
+                .jsonPath("$.id").isEqualTo(1);
+
+        webTestClient.get().uri("/boards/team-a/widget/1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.x").isEqualTo(30);
+        webTestClient.get().uri("/widget/1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.x").isEqualTo(10);
+        webTestClient.get().uri("/boards/team-b/widgets")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    private void createWidget(int x, int zIndex) {
+        webTestClient.post().uri("/widget")
+                .contentType(APPLICATION_JSON)
+                .syncBody("{ \"x\": " + x + ", \"y\": 20, \"width\": 200, \"height\": 100, \"zindex\": " + zIndex + " }")
+                .exchange()
+                .expectStatus().isCreated();
+    }
+}
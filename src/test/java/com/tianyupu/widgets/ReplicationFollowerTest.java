@@ -0,0 +1,168 @@
+package com.tianyupu.widgets;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class ReplicationFollowerTest {
+    private MeterRegistry registry;
+    private WidgetBoards leaderBoards;
+    private ReplicationLeader leader;
+    private ReplicationFollower follower;
+    private WidgetBoards followerBoards;
+
+    @Before
+    public void setup() throws Exception {
+        registry = new SimpleMeterRegistry();
+        leaderBoards = new WidgetBoards(board -> new DefaultWidgetService(), Collections.emptyList(), 16);
+        leader = new ReplicationLeader(leaderBoards, new InetSocketAddress("localhost", 0), 10, new SimpleMeterRegistry());
+        leader.start();
+        follower = new ReplicationFollower(new InetSocketAddress("localhost", leader.port()), 50, registry);
+        followerBoards = new WidgetBoards(follower::create, Collections.emptyList(), 16);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        follower.close();
+        leader.close();
+    }
+
+    @Test
+    public void shouldCopyTheLeadersBoardsIncludingShiftsMadeBeforeAndAfterConnecting() throws Exception {
+        WidgetService board = leaderBoards.board(WidgetBoards.DEFAULT_BOARD);
+        board.createWidget(widgetRequest(0));
+        board.createWidget(widgetRequest(1));
+        board.createWidget(widgetRequest(0));
+        WidgetService teamBoard = leaderBoards.board("team-a");
+
+        follower.start(followerBoards);
+        await(() -> follower.staleness() < 1000);
+        assertThat(sameWidgets(WidgetBoards.DEFAULT_BOARD), is(true));
+
+        board.updateWidgetById(1, widgetRequest(2));
+        board.deleteWidgetById(3);
+        board.createWidget(widgetRequest(null));
+        teamBoard.createWidget(widgetRequest(5));
+        teamBoard.createWidget(widgetRequest(5));
+
+        await(() -> sameWidgets(WidgetBoards.DEFAULT_BOARD) && sameWidgets("team-a"));
+        assertThat(zIndexes(WidgetBoards.DEFAULT_BOARD), is(Arrays.asList(2, 3, 4)));
+        assertThat(zIndexes("team-a"), is(Arrays.asList(5, 6)));
+        assertThat(registry.get("widgets.replication.applied").counter().count(), is(5.0));
+    }
+
+    @Test
+    public void shouldPublishReplicatedChangesOnTheFollowersChangeFeed() throws Exception {
+        follower.start(followerBoards);
+        await(() -> follower.staleness() < 1000);
+        long since = followerBoards.board(WidgetBoards.DEFAULT_BOARD).getChangeFeed().lastSequence();
+
+        WidgetService board = leaderBoards.board(WidgetBoards.DEFAULT_BOARD);
+        board.createWidget(widgetRequest(0));
+        board.createWidget(widgetRequest(0));
+
+        await(() -> sameWidgets(WidgetBoards.DEFAULT_BOARD));
+        WidgetDelta delta = followerBoards.board(WidgetBoards.DEFAULT_BOARD).getWidgetsChangedSince(since);
+        assertThat(delta.isReset(), is(false));
+        assertThat(delta.getShifts(), is(Collections.singletonList(0)));
+        assertThat(delta.getWidgets().size(), is(2));
+    }
+
+    @Test
+    public void shouldRefuseWritesAndStaleReadsOnAFollower() throws Exception {
+        FollowerRequestFilter filter = new FollowerRequestFilter(follower, 1000);
+
+        assertThat(send(filter, "POST").getStatus(), is(405));
+        MockHttpServletResponse stale = send(filter, "GET");
+        assertThat(stale.getStatus(), is(503));
+        assertThat(stale.getHeader("Retry-After"), is("1"));
+
+        follower.start(followerBoards);
+        await(() -> follower.staleness() < 1000);
+        assertThat(send(filter, "GET").getStatus(), is(200));
+    }
+
+    @Test
+    public void shouldRefuseWritesAndStaleReadsOnAReactiveFollower() throws Exception {
+        FollowerWebFilter filter = new FollowerWebFilter(follower, 1000);
+
+        assertThat(send(filter, MockServerHttpRequest.post("/boards/team-a/widgets/batch")).getStatusCode(),
+                is(HttpStatus.METHOD_NOT_ALLOWED));
+        MockServerHttpResponse stale = send(filter, MockServerHttpRequest.get("/widgets"));
+        assertThat(stale.getStatusCode(), is(HttpStatus.SERVICE_UNAVAILABLE));
+        assertThat(stale.getHeaders().getFirst("Retry-After"), is("1"));
+        assertThat(send(filter, MockServerHttpRequest.get("/widgets/changes")).getStatusCode(), is(HttpStatus.OK));
+
+        follower.start(followerBoards);
+        await(() -> follower.staleness() < 1000);
+        assertThat(send(filter, MockServerHttpRequest.get("/widgets")).getStatusCode(), is(HttpStatus.OK));
+    }
+
+    private boolean sameWidgets(String board) {
+        WidgetService replica = followerBoards.find(board);
+        return replica != null && describe(leaderBoards.board(board).getAllWidgets()).equals(describe(replica.getAllWidgets()));
+    }
+
+    private List<Integer> zIndexes(String board) {
+        return followerBoards.find(board).getAllWidgets().stream().map(Widget::getZIndex).collect(Collectors.toList());
+    }
+
+    private static List<String> describe(List<Widget> widgets) {
+        return widgets.stream().map(Widget::toString).collect(Collectors.toList());
+    }
+
+    private static MockHttpServletResponse send(FollowerRequestFilter filter, String method) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest(method, "/widgets"), response, new MockFilterChain());
+        return response;
+    }
+
+    private static MockServerHttpResponse send(FollowerWebFilter filter, MockServerHttpRequest.BaseBuilder<?> request) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(request);
+        filter.filter(exchange, served -> {
+            served.getResponse().setStatusCode(HttpStatus.OK);
+            return Mono.empty();
+        }).block();
+        return exchange.getResponse();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Timed out waiting for the follower");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static WidgetRequest widgetRequest(Integer zIndex) {
+        WidgetRequest widgetRequest = new WidgetRequest();
+        widgetRequest.setX(0);
+        widgetRequest.setY(0);
+        widgetRequest.setWidth(10);
+        widgetRequest.setHeight(10);
+        widgetRequest.setZIndex(zIndex);
+        return widgetRequest;
+    }
+}
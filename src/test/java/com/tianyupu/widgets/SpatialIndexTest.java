@@ -0,0 +1,89 @@
+package com.tianyupu.widgets;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.core.Is.is;
+
+public class SpatialIndexTest {
+    private SpatialIndex spatialIndex;
+
+    @Before
+    public void setup() {
+        spatialIndex = new SpatialIndex(10);
+    }
+
+    @Test
+    public void shouldFindOnlyWidgetsFullyContainedInTheArea() {
+        Widget inside = new Widget(5, 5, 10, 10, 0, 1);
+        Widget overlapping = new Widget(15, 15, 10, 10, 0, 2);
+        Widget outside = new Widget(100, 100, 10, 10, 0, 3);
+        spatialIndex.add(inside);
+        spatialIndex.add(overlapping);
+        spatialIndex.add(outside);
+
+        List<Widget> found = spatialIndex.findWithin(0, 0, 20, 20);
+
+        assertThat(found, containsInAnyOrder(inside));
+    }
+
+    @Test
+    public void shouldFindWidgetsWithNegativeCoordinates() {
+        Widget widget = new Widget(-25, -25, 10, 10, 0, 1);
+        spatialIndex.add(widget);
+
+        assertThat(spatialIndex.findWithin(-30, -30, -10, -10), containsInAnyOrder(widget));
+    }
+
+    @Test
+    public void shouldFindWidgetsWhenTheAreaCoversMoreCellsThanAreOccupied() {
+        Widget widget = new Widget(500, 500, 10, 10, 0, 1);
+        spatialIndex.add(widget);
+
+        assertThat(spatialIndex.findWithin(Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE),
+                containsInAnyOrder(widget));
+    }
+
+    @Test
+    public void shouldFindWidgetsCoveringAPointWhateverTheirSize() {
+        Widget small = new Widget(5, 5, 10, 10, 0, 1);
+        Widget large = new Widget(-5000, -5000, 10000, 10000, 0, 2);
+        Widget elsewhere = new Widget(100, 100, 10, 10, 0, 3);
+        spatialIndex.add(small);
+        spatialIndex.add(large);
+        spatialIndex.add(elsewhere);
+
+        assertThat(spatialIndex.findAt(5, 14), containsInAnyOrder(small, large));
+        assertThat(spatialIndex.findAt(15, 5), containsInAnyOrder(large));
+        assertThat(spatialIndex.findAt(-5000, 4999), containsInAnyOrder(large));
+        assertThat(spatialIndex.findAt(5000, 0), is(empty()));
+        assertThat(spatialIndex.findWithin(-5000, -5000, 5000, 5000), containsInAnyOrder(small, large, elsewhere));
+
+        large.update(0, 0, 5, 5, 0);
+        spatialIndex.update(large);
+
+        assertThat(spatialIndex.findAt(-1, -1), is(empty()));
+        assertThat(spatialIndex.findAt(4, 4), containsInAnyOrder(large));
+    }
+
+    @Test
+    public void shouldReflectUpdatedAndRemovedWidgets() {
+        Widget widget = new Widget(5, 5, 10, 10, 0, 1);
+        spatialIndex.add(widget);
+
+        widget.update(200, 5, 10, 10, 0);
+        spatialIndex.update(widget);
+
+        assertThat(spatialIndex.findWithin(0, 0, 20, 20), is(empty()));
+        assertThat(spatialIndex.findWithin(190, 0, 220, 20), containsInAnyOrder(widget));
+
+        spatialIndex.remove(widget);
+
+        assertThat(spatialIndex.findWithin(190, 0, 220, 20), is(empty()));
+    }
+}
@@ -0,0 +1,101 @@
+package com.tianyupu.widgets;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.tianyupu.widgets.WidgetBoards.DEFAULT_BOARD;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class WidgetBoardsTest {
+    private static final int SEGMENT_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void shouldGiveEachBoardItsOwnIdsAndZOrder() {
+        WidgetBoards boards = new WidgetBoards(board -> new DefaultWidgetService(), Collections.emptyList(), 4);
+        WidgetService first = boards.board("first");
+        WidgetService second = boards.board("second");
+
+        Widget onFirst = first.createWidget(widgetRequest(1));
+        Widget onSecond = second.createWidget(widgetRequest(1));
+        first.createWidget(widgetRequest(1));
+
+        assertThat(onFirst.getId(), is(1L));
+        assertThat(onSecond.getId(), is(1L));
+        assertThat(onFirst.getZIndex(), is(2));
+        assertThat(onSecond.getZIndex(), is(1));
+        assertThat(boards.board("first") == first, is(true));
+        assertThat(boards.find(DEFAULT_BOARD).getWidgetCount(), is(0));
+        assertThat(boards.find("third") == null, is(true));
+    }
+
+    @Test
+    public void shouldRefuseInvalidNamesAndBoardsBeyondTheLimit() {
+        WidgetBoards boards = new WidgetBoards(board -> new DefaultWidgetService(), Collections.emptyList(), 2);
+        boards.board("second");
+
+        assertThat(WidgetBoards.isValidName("team-a_1"), is(true));
+        assertThat(WidgetBoards.isValidName("../data"), is(false));
+        assertThat(WidgetBoards.isValidName(""), is(false));
+        assertThat(boards.find("../data") == null, is(true));
+        boolean limited = false;
+        try {
+            boards.board("third");
+        } catch (WidgetBoardLimitException e) {
+            limited = true;
+        }
+        assertThat(limited, is(true));
+        assertThat(boards.names().size(), is(2));
+    }
+
+    @Test
+    public void shouldTellListenersAboutExistingAndNewBoards() {
+        WidgetBoards boards = new WidgetBoards(board -> new DefaultWidgetService(), Collections.emptyList(), 4);
+        List<String> created = new ArrayList<>();
+
+        boards.onBoardCreated((name, widgetService) -> created.add(name));
+        boards.board("second");
+        boards.board("second");
+
+        assertThat(created, is(Arrays.asList(DEFAULT_BOARD, "second")));
+    }
+
+    @Test
+    public void shouldReopenDurableBoardsAfterARestart() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath();
+        DurableWidgetStoreFactory storeFactory = new DurableWidgetStoreFactory(directory, SEGMENT_SIZE, Long.MAX_VALUE);
+        WidgetBoards boards = new WidgetBoards(storeFactory::create, storeFactory.existingBoards(), 4);
+        boards.board(DEFAULT_BOARD).createWidget(widgetRequest(1));
+        boards.board("team-a").createWidget(widgetRequest(1));
+        boards.board("team-a").createWidget(widgetRequest(1));
+        boards.close();
+
+        storeFactory = new DurableWidgetStoreFactory(directory, SEGMENT_SIZE, Long.MAX_VALUE);
+        boards = new WidgetBoards(storeFactory::create, storeFactory.existingBoards(), 4);
+
+        assertThat(storeFactory.existingBoards(), is(Collections.singletonList("team-a")));
+        assertThat(boards.find(DEFAULT_BOARD).getWidgetCount(), is(1));
+        assertThat(boards.find("team-a").getWidgetCount(), is(2));
+        boards.close();
+    }
+
+    private static WidgetRequest widgetRequest(int zIndex) {
+        WidgetRequest widgetRequest = new WidgetRequest();
+        widgetRequest.setX(10);
+        widgetRequest.setY(20);
+        widgetRequest.setWidth(100);
+        widgetRequest.setHeight(200);
+        widgetRequest.setZIndex(zIndex);
+        return widgetRequest;
+    }
+}
@@ -0,0 +1,139 @@
+package com.tianyupu.widgets;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.util.Lists.newArrayList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class WidgetChangeFeedTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private WidgetChangeFeed feed;
+
+    @Before
+    public void setup() {
+        feed = new WidgetChangeFeed(8);
+    }
+
+    @Test
+    public void shouldDeliverChangesAfterTheGivenSequence() {
+        feed.created(widget(1));
+        feed.shifted(3);
+        feed.updated(widget(1));
+
+        List<WidgetChange> changes = feed.subscribe(1L).take(2).collectList().block(TIMEOUT);
+
+        assertThat(sequencesOf(changes), is(newArrayList(2L, 3L)));
+        assertThat(changes.get(0).getType(), is(WidgetChange.Type.SHIFTED));
+        assertThat(changes.get(0).getFromZIndex(), is(3));
+        assertThat(changes.get(1).getWidget().getId(), is(1L));
+    }
+
+    @Test
+    public void shouldCallEveryListenerAsEachChangeIsAppended() {
+        List<WidgetChange> first = new CopyOnWriteArrayList<>();
+        List<WidgetChange> second = new CopyOnWriteArrayList<>();
+        feed.onChange(first::add);
+        feed.onChange(second::add);
+
+        feed.created(widget(1));
+        feed.shifted(3);
+
+        assertThat(sequencesOf(first), is(newArrayList(1L, 2L)));
+        assertThat(sequencesOf(second), is(newArrayList(1L, 2L)));
+    }
+
+    @Test
+    public void shouldOnlyDeliverNewChangesWithoutASequence() throws InterruptedException {
+        feed.created(widget(1));
+        List<WidgetChange> received = new CopyOnWriteArrayList<>();
+        feed.subscribe(null).subscribe(received::add);
+
+        feed.deleted(widget(1));
+
+        waitFor(() -> received.size() == 1);
+        assertThat(received.get(0).getSequence(), is(2L));
+        assertThat(received.get(0).getType(), is(WidgetChange.Type.DELETED));
+    }
+
+    @Test
+    public void shouldResetASubscriberWhoseNextChangeWasOverwritten() {
+        for (int i = 1; i <= 10; i++) {
+            feed.created(widget(i));
+        }
+
+        List<WidgetChange> changes = feed.subscribe(0L).collectList().block(TIMEOUT);
+
+        assertThat(changes.size(), is(1));
+        assertThat(changes.get(0).getType(), is(WidgetChange.Type.RESET));
+        assertThat(changes.get(0).getSequence(), is(10L));
+    }
+
+    @Test
+    public void shouldResetASubscriberResumingFromAnUnknownSequence() {
+        feed.created(widget(1));
+
+        List<WidgetChange> changes = feed.subscribe(42L).collectList().block(TIMEOUT);
+
+        assertThat(changes.size(), is(1));
+        assertThat(changes.get(0).getType(), is(WidgetChange.Type.RESET));
+        assertThat(changes.get(0).getSequence(), is(1L));
+    }
+
+    @Test
+    public void shouldKeepAppendingWhileASubscriberHasNoDemand() throws InterruptedException {
+        List<WidgetChange> received = new CopyOnWriteArrayList<>();
+        BaseSubscriber<WidgetChange> slowSubscriber = new BaseSubscriber<WidgetChange>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+                request(1);
+            }
+
+            @Override
+            protected void hookOnNext(WidgetChange change) {
+                received.add(change);
+            }
+        };
+        feed.subscribe(0L).subscribe(slowSubscriber);
+        feed.created(widget(1));
+        waitFor(() -> received.size() == 1);
+
+        for (int i = 2; i <= 100; i++) {
+            feed.created(widget(i));
+        }
+        slowSubscriber.request(10);
+        waitFor(() -> received.size() == 2);
+
+        assertThat(feed.lastSequence(), is(100L));
+        assertThat(received.get(0).getSequence(), is(1L));
+        assertThat(received.get(1).getType(), is(WidgetChange.Type.RESET));
+    }
+
+    private static Widget widget(long id) {
+        return new Widget(0, 0, 10, 10, 0, id);
+    }
+
+    private static List<Long> sequencesOf(List<WidgetChange> changes) {
+        return changes.stream().map(WidgetChange::getSequence).collect(Collectors.toList());
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Timed out waiting for changes");
+            }
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.tianyupu.widgets;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.util.Lists.newArrayList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class WidgetChangeLogTest {
+    private WidgetChangeLog changeLog;
+
+    @Before
+    public void setup() {
+        changeLog = new WidgetChangeLog(2, 10);
+    }
+
+    @Test
+    public void shouldKeepOnlyTheLatestChangeOfEachWidget() {
+        Widget first = new Widget(0, 0, 10, 10, 1, 1);
+        Widget second = new Widget(0, 0, 10, 10, 2, 2);
+        changeLog.changed(first, 11);
+        changeLog.changed(second, 12);
+        changeLog.changed(first, 13);
+
+        WidgetDelta delta = changeLog.since(11, 13);
+
+        assertThat(delta.getWidgets(), is(newArrayList(second, first)));
+        assertThat(changeLog.since(12, 13).getWidgets(), is(newArrayList(first)));
+    }
+
+    @Test
+    public void shouldStopCoveringSequencesBeforeTheOldestRetainedTombstoneOrShift() {
+        Widget deleted = new Widget(0, 0, 10, 10, 1, 1);
+        changeLog.changed(deleted, 11);
+        changeLog.shifted(1, 12);
+        changeLog.deleted(deleted, 13);
+
+        assertThat(changeLog.covers(10), is(true));
+
+        changeLog.shifted(2, 14);
+        WidgetDelta delta = changeLog.since(12, 14);
+
+        assertThat(changeLog.covers(11), is(false));
+        assertThat(changeLog.covers(12), is(true));
+        assertThat(delta.getShifts(), is(newArrayList(2)));
+        assertThat(delta.getDeleted(), is(newArrayList(1L)));
+        assertThat(delta.getWidgets().isEmpty(), is(true));
+    }
+}
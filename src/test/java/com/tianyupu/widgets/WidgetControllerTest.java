@@ -1,5 +1,9 @@
 package com.tianyupu.widgets;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -8,16 +12,23 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.StringContains.containsString;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
 import static org.springframework.test.annotation.DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @RunWith(SpringRunner.class)
@@ -151,4 +162,326 @@ public class WidgetControllerTest {
                 .andExpect(jsonPath("$[0].height").value(100))
                 .andExpect(jsonPath("$[0].zindex").value(5));
     }
+
+    @Test
+    public void shouldReturnAPageOfWidgetsWithALinkToTheNextPage() throws Exception {
+        for (int zIndex = 1; zIndex <= 3; zIndex++) {
+            String requestBody = "{ \"x\": 10, \"y\": 20, \"width\": 200, \"height\": 100, \"zindex\": " + zIndex + " }";
+            mockMvc.perform(post("/widget").contentType(APPLICATION_JSON).content(requestBody));
+        }
+
+        mockMvc.perform(get("/widgets?limit=2"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].zindex").value(1))
+                .andExpect(jsonPath("$[1].zindex").value(2))
+                .andExpect(header().string("Link", "<http://localhost/widgets?limit=2&after=2>; rel=\"next\""));
+
+        mockMvc.perform(get("/widgets").param("limit", "2").param("after", "2"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].zindex").value(3))
+                .andExpect(header().doesNotExist("Link"));
+    }
+
+    @Test
+    public void shouldReturnOnlyWidgetsWithinTheRequestedZIndexRange() throws Exception {
+        for (int zIndex = 1; zIndex <= 3; zIndex++) {
+            String requestBody = "{ \"x\": 10, \"y\": 20, \"width\": 200, \"height\": 100, \"zindex\": " + zIndex + " }";
+            mockMvc.perform(post("/widget").contentType(APPLICATION_JSON).content(requestBody));
+        }
+
+        mockMvc.perform(get("/widgets").param("minZIndex", "2").param("maxZIndex", "2"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].zindex").value(2));
+    }
+
+    @Test
+    public void shouldReturnBadRequestWhenThePageLimitIsNotPositive() throws Exception {
+        mockMvc.perform(get("/widgets").param("limit", "0"))
+                .andDo(print())
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void shouldReturnOnlyWidgetsInsideTheRequestedArea() throws Exception {
+        String insideRequestBody = "{ \"x\": 10, \"y\": 20, \"width\": 200, \"height\": 100, \"zindex\": 5 }";
+        String outsideRequestBody = "{ \"x\": 500, \"y\": 500, \"width\": 200, \"height\": 100, \"zindex\": 1 }";
+        mockMvc.perform(post("/widget").contentType(APPLICATION_JSON).content(insideRequestBody));
+        mockMvc.perform(post("/widget").contentType(APPLICATION_JSON).content(outsideRequestBody));
+
+        mockMvc.perform(get("/widgets?x1=0&y1=0&x2=300&y2=300"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].x").value(10))
+                .andExpect(jsonPath("$[0].zindex").value(6));
+    }
+
+    @Test
+    public void shouldReturnTheWidgetsCoveringAPointTopmostFirst() throws Exception {
+        String bottomRequestBody = "{ \"x\": 0, \"y\": 0, \"width\": 200, \"height\": 100, \"zindex\": 1 }";
+        String topRequestBody = "{ \"x\": 50, \"y\": 50, \"width\": 200, \"height\": 100, \"zindex\": 2 }";
+        mockMvc.perform(post("/widget").contentType(APPLICATION_JSON).content(bottomRequestBody));
+        mockMvc.perform(post("/widget").contentType(APPLICATION_JSON).content(topRequestBody));
+
+        mockMvc.perform(get("/widgets/at?x=60&y=60"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].id").value(2))
+                .andExpect(jsonPath("$[1].id").value(1));
+        mockMvc.perform(get("/widgets/at?x=10&y=10&limit=1"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].id").value(1));
+        mockMvc.perform(get("/widgets/at?x=10&y=10&limit=0"))
+                .andDo(print())
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void shouldReturnBadRequestWhenTheAreaIsIncomplete() throws Exception {
+        mockMvc.perform(get("/widgets?x1=0&y1=0&x2=300"))
+                .andDo(print())
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void shouldReturnNotModifiedWhenTheWidgetMatchesIfNoneMatch() throws Exception {
+        String completeRequestBody = "{ \"x\": 10, \"y\": 20, \"width\": 200, \"height\": 100, \"zindex\": 5 }";
+        mockMvc.perform(post("/widget").contentType(APPLICATION_JSON).content(completeRequestBody))
+                .andExpect(header().string("ETag", "\"1.5\""));
+
+        mockMvc.perform(get("/widget/1").header("If-None-Match", "\"1.5\""))
+                .andDo(print())
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    public void shouldUpdateWidgetWhenIfMatchHasTheCurrentVersion() throws Exception {
+        String completeRequestBody = "{ \"x\": 10, \"y\": 20, \"width\": 200, \"height\": 100, \"zindex\": 5 }";
+        mockMvc.perform(post("/widget").contentType(APPLICATION_JSON).content(completeRequestBody));
+
+        String completeUpdateRequestBody = "{ \"x\": 15, \"y\": 25, \"width\": 205, \"height\": 105, \"zindex\": 10 }";
+        mockMvc.perform(put("/widget/1").header("If-Match", "\"1.5\"").contentType(APPLICATION_JSON).content(completeUpdateRequestBody))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"2.10\""))
+                .andExpect(jsonPath("$.version").value(2));
+    }
+
+    @Test
+    public void shouldReturnPreconditionFailedWhenIfMatchHasAStaleVersion() throws Exception {
+        String completeRequestBody = "{ \"x\": 10, \"y\": 20, \"width\": 200, \"height\": 100, \"zindex\": 5 }";
+        mockMvc.perform(post("/widget").contentType(APPLICATION_JSON).content(completeRequestBody));
+
+        String completeUpdateRequestBody = "{ \"x\": 15, \"y\": 25, \"width\": 205, \"height\": 105, \"zindex\": 10 }";
+        mockMvc.perform(put("/widget/1").header("If-Match", "\"3.5\"").contentType(APPLICATION_JSON).content(completeUpdateRequestBody))
+                .andDo(print())
+                .andExpect(status().isPreconditionFailed());
+
+        mockMvc.perform(delete("/widget/1").header("If-Match", "\"3.5\""))
+                .andDo(print())
+                .andExpect(status().isPreconditionFailed());
+
+        mockMvc.perform(get("/widget/1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.x").value(10));
+    }
+
+    @Test
+    public void shouldReturnPreconditionFailedWhenIfMatchHasTheVersionOfAWidgetThatHasSinceShifted() throws Exception {
+        String completeRequestBody = "{ \"x\": 10, \"y\": 20, \"width\": 200, \"height\": 100, \"zindex\": 5 }";
+        mockMvc.perform(post("/widget").contentType(APPLICATION_JSON).content(completeRequestBody));
+        mockMvc.perform(post("/widget").contentType(APPLICATION_JSON).content(completeRequestBody));
+
+        mockMvc.perform(delete("/widget/1").header("If-Match", "\"1.5\""))
+                .andDo(print())
+                .andExpect(status().isPreconditionFailed());
+
+        mockMvc.perform(delete("/widget/1").header("If-Match", "\"1.5\", W/\"1.6\""))
+                .andDo(print())
+                .andExpect(status().isPreconditionFailed());
+
+        mockMvc.perform(delete("/widget/1").header("If-Match", "\"2.5\", \"1.6\""))
+                .andDo(print())
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void shouldApplyABatchAndReturnAllResultsInOnePayload() throws Exception {
+        String batchRequestBody = "["
+                + "{ \"type\": \"CREATE\", \"widget\": { \"x\": 10, \"y\": 20, \"width\": 200, \"height\": 100, \"zindex\": 5 } },"
+                + "{ \"type\": \"CREATE\", \"widget\": { \"x\": 10, \"y\": 20, \"width\": 200, \"height\": 100, \"zindex\": 5 } },"
+                + "{ \"type\": \"DELETE\", \"id\": 1 }"
+                + "]";
+
+        mockMvc.perform(post("/widgets/batch").contentType(APPLICATION_JSON).content(batchRequestBody))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(jsonPath("$[0].outcome").value("CREATED"))
+                .andExpect(jsonPath("$[1].outcome").value("CREATED"))
+                .andExpect(jsonPath("$[1].widget.zindex").value(5))
+                .andExpect(jsonPath("$[2].outcome").value("DELETED"))
+                .andExpect(jsonPath("$[2].widget.zindex").value(6));
+    }
+
+    @Test
+    public void shouldReturnBadRequestWhenABatchOperationIsIncomplete() throws Exception {
+        String batchRequestBody = "[{ \"type\": \"UPDATE\", \"widget\": { \"x\": 10 } }]";
+
+        mockMvc.perform(post("/widgets/batch").contentType(APPLICATION_JSON).content(batchRequestBody))
+                .andDo(print())
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void shouldExposeServiceAndResponseSizeMetrics() throws Exception {
+        String completeRequestBody = "{ \"x\": 10, \"y\": 20, \"width\": 200, \"height\": 100, \"zindex\": 5 }";
+        mockMvc.perform(post("/widget").contentType(APPLICATION_JSON).content(completeRequestBody));
+        mockMvc.perform(get("/widgets"));
+
+        mockMvc.perform(get("/actuator/metrics/widgets.service").param("tag", "operation:create"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.measurements[0].value").value(1.0));
+        mockMvc.perform(get("/actuator/metrics/widgets.response.size"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.measurements[0].value").value(1.0));
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void shouldSendAResetEventWhenResumingTheChangeFeedFromAnUnknownSequence() throws Exception {
+        String completeRequestBody = "{ \"x\": 10, \"y\": 20, \"width\": 200, \"height\": 100, \"zindex\": 5 }";
+        mockMvc.perform(post("/widget").contentType(APPLICATION_JSON).content(completeRequestBody));
+
+        MvcResult result = mockMvc.perform(get("/widgets/changes").header("Last-Event-ID", "42"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("event:RESET\n")));
+    }
+
+    @Test
+    public void shouldReturnOnlyWidgetsChangedSinceTheGivenSequence() throws Exception {
+        String firstRequestBody = "{ \"x\": 10, \"y\": 20, \"width\": 200, \"height\": 100, \"zindex\": 5 }";
+        String secondRequestBody = "{ \"x\": 30, \"y\": 20, \"width\": 200, \"height\": 100, \"zindex\": 5 }";
+        mockMvc.perform(post("/widget").contentType(APPLICATION_JSON).content(firstRequestBody));
+        String reset = mockMvc.perform(get("/widgets?since=0"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.reset").value(true))
+                .andExpect(jsonPath("$.widgets.length()").value(1))
+                .andReturn().getResponse().getContentAsString();
+        long sequence = Long.parseLong(reset.replaceAll(".*\"sequence\":(\\d+).*", "$1"));
+
+        mockMvc.perform(post("/widget").contentType(APPLICATION_JSON).content(secondRequestBody));
+
+        mockMvc.perform(get("/widgets").param("since", String.valueOf(sequence)))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.reset").value(false))
+                .andExpect(jsonPath("$.sequence").value(sequence + 2))
+                .andExpect(jsonPath("$.shifts[0]").value(5))
+                .andExpect(jsonPath("$.widgets.length()").value(1))
+                .andExpect(jsonPath("$.widgets[0].x").value(30))
+                .andExpect(jsonPath("$.deleted.length()").value(0));
+        mockMvc.perform(get("/widgets?since=1&limit=2"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void shouldReturnWidgetsAsSmileOrCborWhenRequested() throws Exception {
+        String completeRequestBody = "{ \"x\": 10, \"y\": 20, \"width\": 200, \"height\": 100, \"zindex\": 5 }";
+        mockMvc.perform(post("/widget").contentType(APPLICATION_JSON).content(completeRequestBody));
+
+        byte[] smile = mockMvc.perform(get("/widgets").accept("application/x-jackson-smile"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("application/x-jackson-smile"))
+                .andReturn().getResponse().getContentAsByteArray();
+        byte[] cbor = mockMvc.perform(get("/widgets").accept("application/cbor"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("application/cbor"))
+                .andReturn().getResponse().getContentAsByteArray();
+        mockMvc.perform(get("/widgets"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(APPLICATION_JSON))
+                .andExpect(jsonPath("$[0].x").value(10))
+                .andExpect(jsonPath("$[0].lastModified").isString());
+
+        JsonNode fromSmile = new ObjectMapper(new SmileFactory()).readTree(smile);
+        JsonNode fromCbor = new ObjectMapper(new CBORFactory()).readTree(cbor);
+        assertThat(fromSmile, is(fromCbor));
+        assertThat(fromSmile.get(0).get("x").asInt(), is(10));
+        assertThat(fromSmile.get(0).get("zindex").asInt(), is(5));
+        assertThat(fromSmile.get(0).get("lastModified").isNumber(), is(true));
+    }
+
+    @Test
+    public void shouldServeRepeatedReadsFromTheResponseCacheUntilTheWidgetChanges() throws Exception {
+        String completeRequestBody = "{ \"x\": 10, \"y\": 20, \"width\": 200, \"height\": 100, \"zindex\": 5 }";
+        String updateRequestBody = "{ \"x\": 30, \"y\": 20, \"width\": 200, \"height\": 100, \"zindex\": 5 }";
+        mockMvc.perform(post("/widget").contentType(APPLICATION_JSON).content(completeRequestBody));
+        mockMvc.perform(get("/widget/1")).andExpect(jsonPath("$.x").value(10));
+        mockMvc.perform(get("/widget/1")).andExpect(jsonPath("$.x").value(10));
+
+        mockMvc.perform(put("/widget/1").contentType(APPLICATION_JSON).content(updateRequestBody));
+
+        mockMvc.perform(get("/widget/1"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"2.5\""))
+                .andExpect(jsonPath("$.x").value(30));
+        mockMvc.perform(get("/actuator/metrics/cache.gets")
+                .param("tag", "cache:widgetResponses")
+                .param("tag", "result:hit"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.measurements[0].value").value(1.0));
+    }
+
+    @Test
+    public void shouldKeepIdsAndZIndexesOfEachBoardApart() throws Exception {
+        String requestBody = "{ \"x\": 10, \"y\": 20, \"width\": 200, \"height\": 100, \"zindex\": 5 }";
+        mockMvc.perform(post("/widget").contentType(APPLICATION_JSON).content(requestBody));
+
+        mockMvc.perform(post("/boards/team-a/widget").contentType(APPLICATION_JSON).content(requestBody))
+                .andDo(print())
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.id").value(1));
+        mockMvc.perform(post("/boards/team-a/widget").contentType(APPLICATION_JSON).content(requestBody))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.id").value(2));
+
+        mockMvc.perform(get("/boards/team-a/widgets"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[1].id").value(1))
+                .andExpect(jsonPath("$[1].zindex").value(6));
+        mockMvc.perform(get("/widget/1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.zindex").value(5));
+        mockMvc.perform(get("/boards/default/widgets"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1));
+        mockMvc.perform(get("/boards/team-b/widget/1"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(put("/boards/team-b/widget/1").contentType(APPLICATION_JSON).content(requestBody))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(post("/boards/team~b/widget").contentType(APPLICATION_JSON).content(requestBody))
+                .andExpect(status().isBadRequest());
+    }
 }
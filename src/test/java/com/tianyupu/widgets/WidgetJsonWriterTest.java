@@ -0,0 +1,60 @@
+package com.tianyupu.widgets;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class WidgetJsonWriterTest {
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json()
+            .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+
+    @Test
+    public void shouldWriteTheSameJsonAsJackson() throws Exception {
+        List<Widget> widgets = Arrays.asList(
+                new Widget(10, 20, 100, 200, 5, 1),
+                new Widget(-10, -20, 0, 1, -5, 2, 3, new Date(0)),
+                new Widget(Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, 1, Integer.MIN_VALUE,
+                        Long.MAX_VALUE, Long.MAX_VALUE, new Date(-1)),
+                new Widget(1, 2, 3, 4, 5, 6, 7, new Date(951_782_400_123L)),
+                new Widget(1, 2, 3, 4, 5, 6, 7, new Date(253_402_300_799_999L))
+        );
+
+        assertThat(writeList(widgets), is(objectMapper.writeValueAsString(widgets)));
+        assertThat(writeList(Collections.emptyList()), is("[]"));
+    }
+
+    @Test
+    public void shouldWriteListsLargerThanTheBuffer() throws Exception {
+        List<Widget> widgets = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            widgets.add(new Widget(i, -i, i * 7, i * 13, i - 500, i + 1));
+        }
+
+        assertThat(writeList(widgets), is(objectMapper.writeValueAsString(widgets)));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WidgetJsonWriter.forCurrentThread().writeLines(widgets.subList(0, 2), out);
+        assertThat(out.toString(StandardCharsets.UTF_8.name()),
+                is(objectMapper.writeValueAsString(widgets.get(0)) + "\n"
+                        + objectMapper.writeValueAsString(widgets.get(1)) + "\n"));
+    }
+
+    private String writeList(List<Widget> widgets) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WidgetJsonWriter.forCurrentThread().writeList(widgets, out);
+        return out.toString(StandardCharsets.UTF_8.name());
+    }
+}
@@ -0,0 +1,229 @@
+package com.tianyupu.widgets;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.tianyupu.widgets.WidgetBoards.DEFAULT_BOARD;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsSame.sameInstance;
+
+public class WidgetResponseCacheTest {
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json()
+            .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+    private WidgetBoards boards;
+    private WidgetService widgetService;
+    private WidgetResponseCache responseCache;
+
+    @Before
+    public void setup() {
+        boards = new WidgetBoards(board -> new DefaultWidgetService(), Collections.emptyList(), 4);
+        widgetService = boards.board(DEFAULT_BOARD);
+        responseCache = new WidgetResponseCache(boards, 1 << 20);
+    }
+
+    @Test
+    public void shouldServeTheSameEncodedWidgetUntilItIsUpdatedOrDeleted() throws Exception {
+        Widget created = widgetService.createWidget(widgetRequest(5));
+
+        Widget cached = responseCache.widget(DEFAULT_BOARD, created.getId());
+
+        assertThat(responseCache.widget(DEFAULT_BOARD, created.getId()), is(sameInstance(cached)));
+        assertThat(new String(responseCache.encoded(cached), "UTF-8"), is(objectMapper.writeValueAsString(created)));
+
+        widgetService.updateWidgetById(created.getId(), widgetRequest(7));
+        Widget updated = responseCache.widget(DEFAULT_BOARD, created.getId());
+
+        assertThat(responseCache.encoded(cached) == null, is(true));
+        assertThat(updated.getZIndex(), is(7));
+        assertThat(updated.getVersion(), is(2L));
+
+        widgetService.deleteWidgetById(created.getId());
+        assertThat(responseCache.widget(DEFAULT_BOARD, created.getId()) == null, is(true));
+    }
+
+    @Test
+    public void shouldDropOnlyTheWidgetsAtOrAboveAShiftAndTheList() {
+        Widget bottom = widgetService.createWidget(widgetRequest(1));
+        Widget top = widgetService.createWidget(widgetRequest(5));
+        Widget cachedBottom = responseCache.widget(DEFAULT_BOARD, bottom.getId());
+        Widget cachedTop = responseCache.widget(DEFAULT_BOARD, top.getId());
+        List<Widget> cachedList = responseCache.widgets(DEFAULT_BOARD);
+
+        widgetService.createWidget(widgetRequest(3));
+
+        assertThat(responseCache.widget(DEFAULT_BOARD, bottom.getId()), is(sameInstance(cachedBottom)));
+        assertThat(responseCache.widget(DEFAULT_BOARD, top.getId()), is(not(sameInstance(cachedTop))));
+        assertThat(responseCache.widget(DEFAULT_BOARD, top.getId()).getZIndex(), is(6));
+        assertThat(responseCache.widgets(DEFAULT_BOARD), is(not(sameInstance(cachedList))));
+        assertThat(responseCache.widgets(DEFAULT_BOARD).size(), is(3));
+    }
+
+    @Test
+    public void shouldCountListAndWidgetReadsInTheCacheStatistics() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        responseCache.bindTo(registry);
+        Widget created = widgetService.createWidget(widgetRequest(5));
+
+        responseCache.widget(DEFAULT_BOARD, created.getId());
+        responseCache.widget(DEFAULT_BOARD, created.getId());
+        responseCache.widgets(DEFAULT_BOARD);
+        responseCache.widgets(DEFAULT_BOARD);
+        responseCache.widgets(DEFAULT_BOARD);
+
+        assertThat(registry.get("cache.gets").tag("result", "hit").functionCounter().count(), is(3.0));
+        assertThat(registry.get("cache.gets").tag("result", "miss").functionCounter().count(), is(2.0));
+    }
+
+    @Test
+    public void shouldReloadAWidgetThatMissedMoreShiftsThanAreRemembered() {
+        Widget bottom = widgetService.createWidget(widgetRequest(1));
+        Widget top = widgetService.createWidget(widgetRequest(2));
+        Widget cachedBottom = responseCache.widget(DEFAULT_BOARD, bottom.getId());
+        Widget cachedTop = responseCache.widget(DEFAULT_BOARD, top.getId());
+
+        for (int i = 0; i < 300; i++) {
+            widgetService.createWidget(widgetRequest(2));
+            if (i == 0) {
+                assertThat(responseCache.widget(DEFAULT_BOARD, bottom.getId()), is(sameInstance(cachedBottom)));
+            }
+        }
+
+        assertThat(responseCache.encoded(cachedTop) == null, is(true));
+        assertThat(responseCache.widget(DEFAULT_BOARD, top.getId()).getZIndex(), is(302));
+        assertThat(responseCache.widget(DEFAULT_BOARD, bottom.getId()), is(not(sameInstance(cachedBottom))));
+        assertThat(responseCache.widget(DEFAULT_BOARD, bottom.getId()), is(bottom));
+    }
+
+    @Test
+    public void shouldKeepTheEntriesOfEachBoardApart() {
+        WidgetService otherBoard = boards.board("other");
+        widgetService.createWidget(widgetRequest(5));
+        otherBoard.createWidget(widgetRequest(1));
+        Widget cached = responseCache.widget(DEFAULT_BOARD, 1);
+        Widget cachedOnOtherBoard = responseCache.widget("other", 1);
+
+        otherBoard.createWidget(widgetRequest(1));
+
+        assertThat(cached.getZIndex(), is(5));
+        assertThat(responseCache.widget(DEFAULT_BOARD, 1), is(sameInstance(cached)));
+        assertThat(responseCache.widget("other", 1).getZIndex(), is(2));
+        assertThat(responseCache.encoded(cachedOnOtherBoard) == null, is(true));
+        assertThat(responseCache.widget("missing", 1) == null, is(true));
+    }
+
+    @Test
+    public void shouldShareOneLoadBetweenConcurrentMisses() throws Exception {
+        SlowListService slowBoard = slowBoard();
+        slowBoard.createWidget(widgetRequest(1));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<Widget>>> readers = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                readers.add(executor.submit(() -> responseCache.widgets("slow")));
+            }
+            slowBoard.loading.await(10, TimeUnit.SECONDS);
+            awaitCoalescedLoads(3);
+            slowBoard.release.countDown();
+
+            List<Widget> first = readers.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<List<Widget>> reader : readers) {
+                assertThat(reader.get(10, TimeUnit.SECONDS), is(sameInstance(first)));
+            }
+            assertThat(slowBoard.loads.get(), is(1));
+            assertThat(responseCache.encoded(first) != null, is(true));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldNotShareALoadThatStartedBeforeAChangeTheReaderHasSeen() throws Exception {
+        SlowListService slowBoard = slowBoard();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<List<Widget>> before = executor.submit(() -> responseCache.widgets("slow"));
+            slowBoard.loading.await(10, TimeUnit.SECONDS);
+
+            slowBoard.createWidget(widgetRequest(1));
+            List<Widget> after = responseCache.widgets("slow");
+            slowBoard.release.countDown();
+
+            List<Widget> loadedBefore = before.get(10, TimeUnit.SECONDS);
+            assertThat(after.size(), is(1));
+            assertThat(loadedBefore.size(), is(0));
+            assertThat(new String(responseCache.encoded(loadedBefore), "UTF-8"), is("[]"));
+            assertThat(slowBoard.loads.get(), is(2));
+            assertThat(responseCache.coalescedLoads(), is(0L));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private SlowListService slowBoard() {
+        SlowListService slowBoard = new SlowListService();
+        boards = new WidgetBoards(board -> board.equals("slow") ? slowBoard : new DefaultWidgetService(),
+                Collections.emptyList(), 4);
+        boards.board("slow");
+        responseCache = new WidgetResponseCache(boards, 1 << 20);
+        return slowBoard;
+    }
+
+    private void awaitCoalescedLoads(long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (responseCache.coalescedLoads() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertThat(responseCache.coalescedLoads(), is(expected));
+    }
+
+    private static WidgetRequest widgetRequest(int zIndex) {
+        WidgetRequest widgetRequest = new WidgetRequest();
+        widgetRequest.setX(10);
+        widgetRequest.setY(20);
+        widgetRequest.setWidth(100);
+        widgetRequest.setHeight(200);
+        widgetRequest.setZIndex(zIndex);
+        return widgetRequest;
+    }
+
+    /**
+     * Holds the first full listing until released, after reading it from the store.
+     */
+    private static class SlowListService extends DefaultWidgetService {
+        private final AtomicInteger loads = new AtomicInteger();
+        private final CountDownLatch loading = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public List<Widget> getAllWidgets() {
+            List<Widget> widgets = super.getAllWidgets();
+            if (loads.incrementAndGet() == 1) {
+                loading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return widgets;
+        }
+    }
+}
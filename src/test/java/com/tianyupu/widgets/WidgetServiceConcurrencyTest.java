@@ -0,0 +1,182 @@
+package com.tianyupu.widgets;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * Hammers each store with concurrent writers that keep creating and moving widgets onto the same
+ * few z-indexes, while a reader checks that every list it gets back is strictly ascending and a
+ * follower mirrors the store from deltas alone.
+ */
+public class WidgetServiceConcurrencyTest {
+    private static final int WRITERS = 4;
+    private static final int OPERATIONS_PER_WRITER = 2000;
+    private static final int Z_INDEXES = 16;
+    private static final long TIMEOUT_SECONDS = 60;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void shouldKeepZIndexesUniqueInTheMemoryStore() throws Exception {
+        stress(new DefaultWidgetService());
+    }
+
+    @Test
+    public void shouldKeepZIndexesUniqueInTheColumnarStore() throws Exception {
+        stress(new ColumnarWidgetService());
+    }
+
+    @Test
+    public void shouldKeepZIndexesUniqueInTheDurableStoreAndAfterARestart() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath();
+        List<Widget> before;
+        try (DurableWidgetService durableWidgetService = new DurableWidgetService(directory, 1 << 20, Long.MAX_VALUE)) {
+            stress(durableWidgetService);
+            before = durableWidgetService.getAllWidgets();
+        }
+
+        try (DurableWidgetService durableWidgetService = new DurableWidgetService(directory, 1 << 20, Long.MAX_VALUE)) {
+            assertThat(snapshots(durableWidgetService.getAllWidgets()), is(snapshots(before)));
+        }
+    }
+
+    private static void stress(WidgetService widgetService) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS + 2);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        try {
+            List<Future<Void>> writers = new ArrayList<>();
+            for (int i = 0; i < WRITERS; i++) {
+                Random random = new Random(i);
+                writers.add(executor.submit(started(start, () -> write(widgetService, random))));
+            }
+            Future<Void> reader = executor.submit(started(start, () -> read(widgetService, writing)));
+            Future<Map<Long, Widget>> follower = executor.submit(started(start, () -> follow(widgetService, writing)));
+
+            start.countDown();
+            for (Future<Void> writer : writers) {
+                writer.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            }
+            writing.set(false);
+            reader.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            Map<Long, Widget> followed = follower.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+            List<Widget> widgets = widgetService.getAllWidgets();
+            assertAscending(widgets);
+            assertThat(widgets.size(), is(widgetService.getWidgetCount()));
+            assertThat(snapshots(sortedByZIndex(followed)), is(snapshots(widgets)));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Void write(WidgetService widgetService, Random random) {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < OPERATIONS_PER_WRITER; i++) {
+            int operation = random.nextInt(10);
+            if (operation < 5 || ids.isEmpty()) {
+                Integer zIndex = random.nextInt(10) == 0 ? null : random.nextInt(Z_INDEXES);
+                ids.add(widgetService.createWidget(widgetRequest(random, zIndex)).getId());
+            } else if (operation < 8) {
+                long id = ids.get(random.nextInt(ids.size()));
+                widgetService.updateWidgetById(id, widgetRequest(random, random.nextInt(Z_INDEXES)));
+            } else {
+                widgetService.deleteWidgetById(ids.remove(random.nextInt(ids.size())));
+            }
+        }
+        return null;
+    }
+
+    private static Void read(WidgetService widgetService, AtomicBoolean writing) {
+        while (writing.get()) {
+            assertAscending(widgetService.getAllWidgets());
+            assertAscending(widgetService.getWidgetsByZIndex(0, Z_INDEXES, 50));
+            assertAscending(widgetService.getWidgetsInArea(0, 0, 1100, 1100));
+        }
+        return null;
+    }
+
+    private static Map<Long, Widget> follow(WidgetService widgetService, AtomicBoolean writing) {
+        Map<Long, Widget> widgets = new HashMap<>();
+        long sequence = 0;
+        boolean last;
+        do {
+            last = !writing.get();
+            WidgetDelta delta = widgetService.getWidgetsChangedSince(sequence);
+            if (delta.isReset()) {
+                widgets.clear();
+            }
+            for (int fromZIndex : delta.getShifts()) {
+                widgets.replaceAll((id, widget) -> widget.getZIndex() >= fromZIndex
+                        ? moved(widget, widget.getZIndex() + 1) : widget);
+            }
+            delta.getDeleted().forEach(widgets::remove);
+            delta.getWidgets().forEach(widget -> widgets.put(widget.getId(), moved(widget, widget.getZIndex())));
+            sequence = delta.getSequence();
+        } while (!last);
+        return widgets;
+    }
+
+    private static <T> Callable<T> started(CountDownLatch start, Callable<T> task) {
+        return () -> {
+            start.await();
+            return task.call();
+        };
+    }
+
+    private static void assertAscending(List<Widget> widgets) {
+        for (int i = 1; i < widgets.size(); i++) {
+            if (widgets.get(i - 1).getZIndex() >= widgets.get(i).getZIndex()) {
+                throw new AssertionError("Z-indexes out of order: " + widgets.get(i - 1) + ", " + widgets.get(i));
+            }
+        }
+    }
+
+    private static Widget moved(Widget widget, int zIndex) {
+        return new Widget(widget.getX(), widget.getY(), widget.getWidth(), widget.getHeight(), zIndex, widget.getId(),
+                widget.getVersion(), widget.getLastModified());
+    }
+
+    private static List<Widget> sortedByZIndex(Map<Long, Widget> widgets) {
+        List<Widget> sorted = new ArrayList<>(widgets.values());
+        sorted.sort((first, second) -> Integer.compare(first.getZIndex(), second.getZIndex()));
+        return sorted;
+    }
+
+    private static List<String> snapshots(List<Widget> widgets) {
+        return widgets.stream()
+                .map(widget -> widget.getId() + ":" + widget.getX() + "," + widget.getY() + "," + widget.getWidth()
+                        + "," + widget.getHeight() + "," + widget.getZIndex() + ",v" + widget.getVersion())
+                .collect(Collectors.toList());
+    }
+
+    private static WidgetRequest widgetRequest(Random random, Integer zIndex) {
+        WidgetRequest widgetRequest = new WidgetRequest();
+        widgetRequest.setX(random.nextInt(1000));
+        widgetRequest.setY(random.nextInt(1000));
+        widgetRequest.setWidth(1 + random.nextInt(100));
+        widgetRequest.setHeight(1 + random.nextInt(100));
+        widgetRequest.setZIndex(zIndex);
+        return widgetRequest;
+    }
+}
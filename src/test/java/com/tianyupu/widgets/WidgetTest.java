@@ -0,0 +1,54 @@
+package com.tianyupu.widgets;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.util.Date;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsSame.sameInstance;
+
+public class WidgetTest {
+
+    @Test
+    public void shouldApplyAllFieldsOfAnUpdateWithASingleTimestamp() throws Exception {
+        Widget widget = new Widget(10, 20, 100, 200, 5, 1);
+        Date created = widget.getLastModified();
+        Thread.sleep(5);
+
+        boolean changed = widget.update(15, 25, 105, 205, 6);
+
+        assertThat(changed, is(true));
+        assertThat(widget.getX(), is(15));
+        assertThat(widget.getY(), is(25));
+        assertThat(widget.getWidth(), is(105));
+        assertThat(widget.getHeight(), is(205));
+        assertThat(widget.getZIndex(), is(6));
+        assertThat(widget.getLastModified(), is(not(created)));
+        assertThat(widget.getVersion(), is(2L));
+    }
+
+    @Test
+    public void shouldNotTouchTheWidgetWhenAnUpdateChangesNothing() {
+        Widget widget = new Widget(10, 20, 100, 200, 5, 1);
+        Date created = widget.getLastModified();
+
+        boolean changed = widget.update(10, 20, 100, 200, 5);
+
+        assertThat(changed, is(false));
+        assertThat(widget.getLastModified(), is(sameInstance(created)));
+        assertThat(widget.getVersion(), is(1L));
+    }
+
+    @Test
+    public void shouldSerializeAllWidgetFields() throws Exception {
+        Widget widget = new Widget(10, 20, 100, 200, 5, 1);
+
+        String json = new ObjectMapper().writeValueAsString(widget);
+
+        assertThat(json, is("{\"x\":10,\"y\":20,\"width\":100,\"height\":200,\"zindex\":5,\"lastModified\":"
+                + widget.getLastModified().getTime() + ",\"version\":1,\"id\":1}"));
+    }
+}
@@ -0,0 +1,192 @@
+package com.tianyupu.widgets;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.util.Lists.newArrayList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class ZOrderIndexTest {
+    private ZOrderIndex<String> zOrderIndex;
+
+    @Before
+    public void setup() {
+        zOrderIndex = new ZOrderIndex<>();
+    }
+
+    @Test
+    public void shouldShiftAllEntriesAtOrAboveTheInsertedZIndex() {
+        ZOrderIndex.Entry<String> first = zOrderIndex.insert(new ZOrderIndex.Entry<>("first", 0), 2);
+        ZOrderIndex.Entry<String> second = zOrderIndex.insert(new ZOrderIndex.Entry<>("second", 0), 6);
+        ZOrderIndex.Entry<String> third = zOrderIndex.insert(new ZOrderIndex.Entry<>("third", 0), 2);
+
+        assertThat(third.getZIndex(), is(2));
+        assertThat(first.getZIndex(), is(3));
+        assertThat(second.getZIndex(), is(7));
+        assertThat(zOrderIndex.maxZIndex(), is(7));
+        assertThat(zOrderIndex.values(), is(newArrayList("third", "first", "second")));
+    }
+
+    @Test
+    public void shouldInsertOnTopOfTheHighestEntry() {
+        zOrderIndex.insert(new ZOrderIndex.Entry<>("first", 0), 5);
+        ZOrderIndex.Entry<String> top = zOrderIndex.insertOnTop(new ZOrderIndex.Entry<>("top", 0));
+
+        assertThat(top.getZIndex(), is(6));
+        assertThat(zOrderIndex.maxZIndex(), is(6));
+    }
+
+    @Test
+    public void shouldKeepLastZIndexAndRecomputeMaximumWhenRemovingAnEntry() {
+        zOrderIndex.insert(new ZOrderIndex.Entry<>("first", 0), 1);
+        ZOrderIndex.Entry<String> top = zOrderIndex.insert(new ZOrderIndex.Entry<>("top", 0), 9);
+
+        zOrderIndex.remove(top);
+
+        assertThat(top.getZIndex(), is(9));
+        assertThat(zOrderIndex.maxZIndex(), is(1));
+        assertThat(zOrderIndex.size(), is(1));
+    }
+
+    @Test
+    public void shouldMoveEntryOntoAFreeZIndexWithoutShiftingOthers() {
+        ZOrderIndex.Entry<String> first = zOrderIndex.insert(new ZOrderIndex.Entry<>("first", 0), 1);
+        ZOrderIndex.Entry<String> second = zOrderIndex.insert(new ZOrderIndex.Entry<>("second", 0), 2);
+
+        assertThat(first.moveOnto(10), is(0));
+        assertThat(first.moveOnto(10), is(0));
+
+        assertThat(second.getZIndex(), is(2));
+        assertThat(zOrderIndex.maxZIndex(), is(10));
+        assertThat(zOrderIndex.values(), is(newArrayList("second", "first")));
+    }
+
+    @Test
+    public void shouldShiftEntriesOnlyWhenAnEntryIsMovedOntoATakenZIndex() {
+        ZOrderIndex.Entry<String> first = zOrderIndex.insert(new ZOrderIndex.Entry<>("first", 0), 1);
+        ZOrderIndex.Entry<String> second = zOrderIndex.insert(new ZOrderIndex.Entry<>("second", 0), 2);
+        ZOrderIndex.Entry<String> third = zOrderIndex.insert(new ZOrderIndex.Entry<>("third", 0), 3);
+
+        assertThat(third.moveOnto(2), is(1));
+        assertThat(first.moveOnto(10), is(0));
+
+        assertThat(third.getZIndex(), is(2));
+        assertThat(second.getZIndex(), is(3));
+        assertThat(first.getZIndex(), is(10));
+        assertThat(zOrderIndex.maxZIndex(), is(10));
+        assertThat(zOrderIndex.values(), is(newArrayList("third", "second", "first")));
+    }
+
+    @Test
+    public void shouldCopyValuesWithTheZIndexTheyHadWhenRead() {
+        ZOrderIndex<String> copyingIndex = new ZOrderIndex<>((value, zIndex) -> value + "@" + zIndex);
+        copyingIndex.insert(new ZOrderIndex.Entry<>("first", 0), 1);
+
+        List<String> snapshot = copyingIndex.values();
+        copyingIndex.insert(new ZOrderIndex.Entry<>("second", 0), 1);
+
+        assertThat(snapshot, is(newArrayList("first@1")));
+        assertThat(copyingIndex.cachedValues() == null, is(true));
+        assertThat(copyingIndex.values(), is(newArrayList("second@1", "first@2")));
+        assertThat(copyingIndex.range(2, 2, 10), is(newArrayList("first@2")));
+    }
+
+    @Test
+    public void shouldReuseTheValuesSnapshotUntilTheIndexChanges() {
+        zOrderIndex.insert(new ZOrderIndex.Entry<>("first", 0), 1);
+
+        List<String> snapshot = zOrderIndex.values();
+        assertThat(zOrderIndex.values() == snapshot, is(true));
+
+        zOrderIndex.insert(new ZOrderIndex.Entry<>("second", 0), 0);
+        List<String> rebuiltSnapshot = zOrderIndex.values();
+
+        assertThat(rebuiltSnapshot == snapshot, is(false));
+        assertThat(snapshot, is(newArrayList("first")));
+        assertThat(rebuiltSnapshot, is(newArrayList("second", "first")));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void shouldNotAllowTheValuesSnapshotToBeModified() {
+        zOrderIndex.insert(new ZOrderIndex.Entry<>("first", 0), 1);
+
+        zOrderIndex.values().add("second");
+    }
+
+    @Test
+    public void shouldReportHowManyEntriesWereShiftedByAnInsert() {
+        List<Integer> shifts = new ArrayList<>();
+        zOrderIndex.onShift(shifts::add);
+        zOrderIndex.insert(new ZOrderIndex.Entry<>("first", 0), 1);
+        zOrderIndex.insert(new ZOrderIndex.Entry<>("second", 0), 2);
+        zOrderIndex.insert(new ZOrderIndex.Entry<>("third", 0), 5);
+        zOrderIndex.insert(new ZOrderIndex.Entry<>("bottom", 0), 1);
+        zOrderIndex.insert(new ZOrderIndex.Entry<>("middle", 0), 4);
+
+        assertThat(shifts, is(newArrayList(0, 0, 0, 3, 1)));
+    }
+
+    @Test
+    public void shouldMatchANaiveShiftingModelForRandomOperations() {
+        Random random = new Random(42);
+        List<ZOrderIndex.Entry<String>> entries = new ArrayList<>();
+        List<int[]> model = new ArrayList<>();
+
+        for (int i = 0; i < 2000; i++) {
+            int operation = random.nextInt(4);
+            if (operation < 2 || entries.isEmpty()) {
+                int zIndex = random.nextInt(200) - 100;
+                for (int[] modelled : model) {
+                    if (modelled[0] >= zIndex) {
+                        modelled[0]++;
+                    }
+                }
+                entries.add(zOrderIndex.insert(new ZOrderIndex.Entry<>(String.valueOf(i), 0), zIndex));
+                model.add(new int[]{zIndex});
+            } else if (operation == 2) {
+                int position = random.nextInt(entries.size());
+                zOrderIndex.remove(entries.remove(position));
+                model.remove(position);
+            } else {
+                int position = random.nextInt(entries.size());
+                int zIndex = random.nextInt(400) - 200;
+                int[] moved = model.get(position);
+                boolean taken = model.stream().anyMatch(modelled -> modelled != moved && modelled[0] == zIndex);
+                int expectedShifted = 0;
+                if (taken) {
+                    for (int[] modelled : model) {
+                        if (modelled != moved && modelled[0] >= zIndex) {
+                            modelled[0]++;
+                            expectedShifted++;
+                        }
+                    }
+                }
+                assertThat(entries.get(position).moveOnto(zIndex), is(expectedShifted));
+                moved[0] = zIndex;
+            }
+
+            for (int j = 0; j < entries.size(); j++) {
+                assertThat(entries.get(j).getZIndex(), is(model.get(j)[0]));
+            }
+            int expectedMax = model.stream().mapToInt(modelled -> modelled[0]).max().orElse(Integer.MIN_VALUE);
+            assertThat(zOrderIndex.maxZIndex(), is(expectedMax));
+        }
+
+        List<Integer> zIndexes = entries.stream()
+                .sorted(Comparator.comparingInt(ZOrderIndex.Entry::getZIndex))
+                .map(ZOrderIndex.Entry::getZIndex)
+                .collect(Collectors.toList());
+        List<Integer> valueZIndexes = zOrderIndex.values().stream()
+                .map(value -> entries.stream().filter(entry -> entry.getValue().equals(value)).findFirst().get())
+                .map(ZOrderIndex.Entry::getZIndex)
+                .collect(Collectors.toList());
+        assertThat(valueZIndexes, is(zIndexes));
+    }
+}